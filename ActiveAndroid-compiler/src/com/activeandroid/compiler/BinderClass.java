@@ -0,0 +1,324 @@
+package com.activeandroid.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 描述一个待生成的ModelBinder类,并负责输出它的Java源码
+ */
+final class BinderClass {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 和运行期BinderUtils.BINDER_SUFFIX保持一致
+     */
+    static final String BINDER_SUFFIX = "$$ModelBinder";
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // ENUMERATIONS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 成员变量在生成代码中的读写方式
+     */
+    enum FieldKind {
+        BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, BOOLEAN, CHAR,
+        BOXED_BYTE, BOXED_SHORT, BOXED_INT, BOXED_LONG, BOXED_FLOAT, BOXED_DOUBLE, BOXED_BOOLEAN, BOXED_CHAR,
+        STRING, BLOB, MODEL, LAZY, ENUM, SERIALIZED
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final String mPackageName;
+    private final String mClassName;
+    private final String mModelType;
+    private final List<ColumnField> mFields = new ArrayList<ColumnField>();
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    BinderClass(String packageName, String className, String modelType) {
+        mPackageName = packageName;
+        mClassName = className;
+        mModelType = modelType;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param referencedType kind为LAZY时引用的Model类名,其他情况为null
+     */
+    void addField(String fieldName, String columnName, FieldKind kind, String type, String rawType,
+            String referencedType) {
+        mFields.add(new ColumnField(fieldName, columnName, kind, type, rawType, referencedType));
+    }
+
+    String getQualifiedName() {
+        return mPackageName.length() == 0 ? mClassName : mPackageName + "." + mClassName;
+    }
+
+    String brewJava() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("// Generated code from ActiveAndroid. Do not modify!\n");
+        if (mPackageName.length() > 0) {
+            builder.append("package ").append(mPackageName).append(";\n\n");
+        }
+        builder.append("import android.content.ContentValues;\n");
+        builder.append("import android.database.Cursor;\n");
+        builder.append("import android.database.sqlite.SQLiteStatement;\n\n");
+        builder.append("import com.activeandroid.binder.BinderUtils;\n");
+        builder.append("import com.activeandroid.binder.ModelBinder;\n\n");
+
+        builder.append("@SuppressWarnings(\"unchecked\")\n");
+        builder.append("public final class ").append(mClassName)
+                .append(" implements ModelBinder<").append(mModelType).append("> {\n");
+
+        brewColumnNames(builder);
+        builder.append("\n");
+        brewBindValues(builder);
+        builder.append("\n");
+        brewBindStatement(builder);
+        builder.append("\n");
+        brewLoadFromCursor(builder);
+
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private void brewColumnNames(StringBuilder builder) {
+        builder.append("    private static final String[] COLUMN_NAMES = {");
+        for (int i = 0; i < mFields.size(); i++) {
+            builder.append(i > 0 ? ", " : "").append(quote(mFields.get(i).columnName));
+        }
+        builder.append("};\n\n");
+
+        builder.append("    @Override\n");
+        builder.append("    public String[] getColumnNames() {\n");
+        builder.append("        return COLUMN_NAMES;\n");
+        builder.append("    }\n");
+    }
+
+    private void brewBindValues(StringBuilder builder) {
+        builder.append("    @Override\n");
+        builder.append("    public void bindValues(").append(mModelType).append(" model, ContentValues values) {\n");
+
+        for (ColumnField field : mFields) {
+            final String column = quote(field.columnName);
+            final String value = "model." + field.fieldName;
+
+            builder.append("        ");
+            switch (field.kind) {
+                case CHAR:
+                    builder.append("values.put(").append(column).append(", String.valueOf(").append(value).append("));\n");
+                    break;
+                case BOXED_CHAR:
+                    builder.append("values.put(").append(column).append(", ").append(value).append(" != null ? ")
+                            .append(value).append(".toString() : null);\n");
+                    break;
+                case MODEL:
+                case LAZY:
+                    builder.append("values.put(").append(column).append(", ").append(value).append(" != null ? ")
+                            .append(value).append(".getId() : null);\n");
+                    break;
+                case ENUM:
+                    builder.append("values.put(").append(column).append(", ").append(value).append(" != null ? ")
+                            .append(value).append(".name() : null);\n");
+                    break;
+                case SERIALIZED:
+                    builder.append("BinderUtils.putValue(values, ").append(column).append(", ")
+                            .append(field.rawType).append(".class, ").append(value).append(");\n");
+                    break;
+                default:
+                    builder.append("values.put(").append(column).append(", ").append(value).append(");\n");
+                    break;
+            }
+        }
+
+        builder.append("    }\n");
+    }
+
+    private void brewBindStatement(StringBuilder builder) {
+        builder.append("    @Override\n");
+        builder.append("    public void bindStatement(").append(mModelType)
+                .append(" model, SQLiteStatement statement) {\n");
+
+        for (int i = 0; i < mFields.size(); i++) {
+            final ColumnField field = mFields.get(i);
+            final int index = i + 1;
+            final String value = "model." + field.fieldName;
+
+            switch (field.kind) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    builder.append("        statement.bindLong(").append(index).append(", ").append(value).append(");\n");
+                    break;
+                case FLOAT:
+                case DOUBLE:
+                    builder.append("        statement.bindDouble(").append(index).append(", ").append(value).append(");\n");
+                    break;
+                case BOOLEAN:
+                    builder.append("        statement.bindLong(").append(index).append(", ").append(value).append(" ? 1 : 0);\n");
+                    break;
+                case CHAR:
+                    builder.append("        statement.bindString(").append(index).append(", String.valueOf(").append(value).append("));\n");
+                    break;
+                case BOXED_BYTE:
+                case BOXED_SHORT:
+                case BOXED_INT:
+                case BOXED_LONG:
+                    brewNullableBind(builder, index, value, "bindLong", value);
+                    break;
+                case BOXED_FLOAT:
+                case BOXED_DOUBLE:
+                    brewNullableBind(builder, index, value, "bindDouble", value);
+                    break;
+                case BOXED_BOOLEAN:
+                    brewNullableBind(builder, index, value, "bindLong", value + " ? 1 : 0");
+                    break;
+                case BOXED_CHAR:
+                    brewNullableBind(builder, index, value, "bindString", value + ".toString()");
+                    break;
+                case STRING:
+                    brewNullableBind(builder, index, value, "bindString", value);
+                    break;
+                case BLOB:
+                    brewNullableBind(builder, index, value, "bindBlob", value);
+                    break;
+                case MODEL:
+                case LAZY:
+                    brewNullableBind(builder, index, value + " != null && " + value + ".getId()", "bindLong",
+                            value + ".getId()");
+                    break;
+                case ENUM:
+                    brewNullableBind(builder, index, value, "bindString", value + ".name()");
+                    break;
+                default:
+                    builder.append("        BinderUtils.bindValue(statement, ").append(index).append(", ")
+                            .append(field.rawType).append(".class, ").append(value).append(");\n");
+                    break;
+            }
+        }
+
+        builder.append("    }\n");
+    }
+
+    /**
+     * SQLiteStatement的bind*()不接受null,为空时调用bindNull()
+     */
+    private void brewNullableBind(StringBuilder builder, int index, String nullCheck, String method, String value) {
+        builder.append("        if (").append(nullCheck).append(" != null) {\n");
+        builder.append("            statement.").append(method).append("(").append(index).append(", ")
+                .append(value).append(");\n");
+        builder.append("        } else {\n");
+        builder.append("            statement.bindNull(").append(index).append(");\n");
+        builder.append("        }\n");
+    }
+
+    private void brewLoadFromCursor(StringBuilder builder) {
+        builder.append("    @Override\n");
+        builder.append("    public void loadFromCursor(").append(mModelType).append(" model, Cursor cursor) {\n");
+        builder.append("        loadFromCursor(model, cursor, BinderUtils.getColumnIndexes(cursor.getColumnNames(), COLUMN_NAMES));\n");
+        builder.append("    }\n");
+        builder.append("\n");
+        builder.append("    @Override\n");
+        builder.append("    public void loadFromCursor(").append(mModelType)
+                .append(" model, Cursor cursor, int[] columnIndexes) {\n");
+
+        if (!mFields.isEmpty()) {
+            builder.append("        int index;\n");
+        }
+
+        for (int i = 0; i < mFields.size(); i++) {
+            final ColumnField field = mFields.get(i);
+            builder.append("\n");
+            builder.append("        index = columnIndexes[").append(i).append("];\n");
+            builder.append("        if (index >= 0 && !cursor.isNull(index)) {\n");
+            builder.append("            model.").append(field.fieldName).append(" = ").append(readExpression(field))
+                    .append(";\n");
+            builder.append("        }\n");
+        }
+
+        builder.append("    }\n");
+    }
+
+    private String readExpression(ColumnField field) {
+        switch (field.kind) {
+            case BYTE:
+            case BOXED_BYTE:
+                return "(byte) cursor.getInt(index)";
+            case SHORT:
+            case BOXED_SHORT:
+                return "cursor.getShort(index)";
+            case INT:
+            case BOXED_INT:
+                return "cursor.getInt(index)";
+            case LONG:
+            case BOXED_LONG:
+                return "cursor.getLong(index)";
+            case FLOAT:
+            case BOXED_FLOAT:
+                return "cursor.getFloat(index)";
+            case DOUBLE:
+            case BOXED_DOUBLE:
+                return "cursor.getDouble(index)";
+            case BOOLEAN:
+            case BOXED_BOOLEAN:
+                return "cursor.getInt(index) != 0";
+            case CHAR:
+            case BOXED_CHAR:
+                return "cursor.getString(index).charAt(0)";
+            case STRING:
+                return "cursor.getString(index)";
+            case BLOB:
+                return "cursor.getBlob(index)";
+            case MODEL:
+                return "BinderUtils.loadEntity(" + field.rawType + ".class, cursor.getLong(index))";
+            case LAZY:
+                return "com.activeandroid.Lazy.of(" + field.referencedType + ".class, cursor.getLong(index))";
+            case ENUM:
+                return field.rawType + ".valueOf(cursor.getString(index))";
+            default:
+                return "(" + field.type + ") BinderUtils.readValue(cursor, index, " + field.rawType + ".class)";
+        }
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // INNER CLASSES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class ColumnField {
+        final String fieldName;
+        final String columnName;
+        final FieldKind kind;
+        final String type;
+        final String rawType;
+        final String referencedType;
+
+        ColumnField(String fieldName, String columnName, FieldKind kind, String type, String rawType,
+                String referencedType) {
+            this.fieldName = fieldName;
+            this.columnName = columnName;
+            this.kind = kind;
+            this.type = type;
+            this.rawType = rawType;
+            this.referencedType = referencedType;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.activeandroid.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * 编译期读取Table和Column注解,为每个Model生成"Model类名$$ModelBinder",
+ * 让Model.save()和Model.loadFromCursor()可以直接读写成员变量,不再依赖反射.
+ *
+ * 以下情况不生成ModelBinder,运行期自动回退到反射路径:
+ * 1. Model是抽象类或者是private内部类.
+ * 2. Column成员是private的,或者是final的,或者是其他包中父类的非public成员.
+ */
+public final class ModelBinderProcessor extends AbstractProcessor {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private static final String MODEL_TYPE = "com.activeandroid.Model";
+    private static final String TABLE_TYPE = "com.activeandroid.annotation.Table";
+    private static final String COLUMN_TYPE = "com.activeandroid.annotation.Column";
+    private static final String LAZY_TYPE = "com.activeandroid.Lazy";
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<String>();
+        types.add(TABLE_TYPE);
+        types.add(COLUMN_TYPE);
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final TypeElement modelElement = mElements.getTypeElement(MODEL_TYPE);
+        final TypeElement tableElement = mElements.getTypeElement(TABLE_TYPE);
+        final TypeElement columnElement = mElements.getTypeElement(COLUMN_TYPE);
+        if (modelElement == null || tableElement == null || columnElement == null) {
+            return false;
+        }
+
+        // 收集所有带Table注解的类以及包含Column成员的类
+        Set<TypeElement> models = new LinkedHashSet<TypeElement>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(tableElement)) {
+            if (element.getKind() == ElementKind.CLASS) {
+                models.add((TypeElement) element);
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(columnElement)) {
+            if (element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                models.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+
+        for (TypeElement model : models) {
+            if (!mTypes.isSubtype(model.asType(), modelElement.asType())
+                    || model.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+
+            BinderClass binderClass = createBinderClass(model, modelElement, columnElement);
+            if (binderClass != null) {
+                writeBinderClass(model, binderClass);
+            }
+        }
+
+        return false;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 解析Model及其父类中所有的Column成员,无法直接访问时返回null
+     */
+    private BinderClass createBinderClass(TypeElement model, TypeElement modelElement, TypeElement columnElement) {
+        if (!isAccessible(model)) {
+            note(model, "is not accessible from its package");
+            return null;
+        }
+
+        final String packageName = getPackageName(model);
+        final String binaryName = mElements.getBinaryName(model).toString();
+        final String simpleName = packageName.length() == 0
+                ? binaryName : binaryName.substring(packageName.length() + 1);
+
+        BinderClass binderClass = new BinderClass(packageName, simpleName + BinderClass.BINDER_SUFFIX,
+                model.getQualifiedName().toString());
+
+        // 和ReflectionUtils.getDeclaredColumnFields()一样,从子类向父类逐级查找
+        TypeElement type = model;
+        while (type != null && !type.equals(modelElement)) {
+            for (Element element : type.getEnclosedElements()) {
+                if (element.getKind() != ElementKind.FIELD) {
+                    continue;
+                }
+
+                AnnotationMirror column = getAnnotationMirror(element, columnElement);
+                if (column == null) {
+                    continue;
+                }
+
+                final VariableElement field = (VariableElement) element;
+                final Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)
+                        || (!modifiers.contains(Modifier.PUBLIC) && !packageName.equals(getPackageName(type)))
+                        || field.asType().getKind() == TypeKind.TYPEVAR) {
+                    note(model, "has a column field " + field.getSimpleName() + " that generated code can't assign");
+                    return null;
+                }
+
+                String columnName = getColumnName(column);
+                if (columnName == null || columnName.length() == 0) {
+                    columnName = field.getSimpleName().toString();
+                }
+
+                final BinderClass.FieldKind kind = getFieldKind(field.asType());
+                String referencedType = null;
+                if (kind == BinderClass.FieldKind.LAZY) {
+                    referencedType = getLazyType((DeclaredType) field.asType());
+                    if (referencedType == null) {
+                        note(model, "has a lazy column " + field.getSimpleName() + " without a concrete Model type");
+                        return null;
+                    }
+                }
+
+                binderClass.addField(field.getSimpleName().toString(), columnName, kind,
+                        field.asType().toString(), mTypes.erasure(field.asType()).toString(), referencedType);
+            }
+
+            type = getSuperclass(type);
+        }
+
+        return binderClass;
+    }
+
+    private void writeBinderClass(TypeElement model, BinderClass binderClass) {
+        try {
+            JavaFileObject source = mFiler.createSourceFile(binderClass.getQualifiedName(), model);
+            Writer writer = source.openWriter();
+            try {
+                writer.write(binderClass.brewJava());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            mMessager.printMessage(Kind.ERROR, "Unable to write ModelBinder for "
+                    + model.getQualifiedName() + ": " + e.getMessage(), model);
+        }
+    }
+
+    /**
+     * 将成员类型映射为生成代码中的读写方式
+     */
+    private BinderClass.FieldKind getFieldKind(TypeMirror type) {
+        switch (type.getKind()) {
+            case BYTE:
+                return BinderClass.FieldKind.BYTE;
+            case SHORT:
+                return BinderClass.FieldKind.SHORT;
+            case INT:
+                return BinderClass.FieldKind.INT;
+            case LONG:
+                return BinderClass.FieldKind.LONG;
+            case FLOAT:
+                return BinderClass.FieldKind.FLOAT;
+            case DOUBLE:
+                return BinderClass.FieldKind.DOUBLE;
+            case BOOLEAN:
+                return BinderClass.FieldKind.BOOLEAN;
+            case CHAR:
+                return BinderClass.FieldKind.CHAR;
+            case ARRAY:
+                if (mTypes.isSameType(type, mTypes.getArrayType(mTypes.getPrimitiveType(TypeKind.BYTE)))) {
+                    return BinderClass.FieldKind.BLOB;
+                }
+                return BinderClass.FieldKind.SERIALIZED;
+            case DECLARED:
+                return getDeclaredFieldKind((DeclaredType) type);
+            default:
+                return BinderClass.FieldKind.SERIALIZED;
+        }
+    }
+
+    private BinderClass.FieldKind getDeclaredFieldKind(DeclaredType type) {
+        final TypeElement element = (TypeElement) type.asElement();
+        final String name = element.getQualifiedName().toString();
+
+        if (name.equals("java.lang.Byte")) {
+            return BinderClass.FieldKind.BOXED_BYTE;
+        } else if (name.equals("java.lang.Short")) {
+            return BinderClass.FieldKind.BOXED_SHORT;
+        } else if (name.equals("java.lang.Integer")) {
+            return BinderClass.FieldKind.BOXED_INT;
+        } else if (name.equals("java.lang.Long")) {
+            return BinderClass.FieldKind.BOXED_LONG;
+        } else if (name.equals("java.lang.Float")) {
+            return BinderClass.FieldKind.BOXED_FLOAT;
+        } else if (name.equals("java.lang.Double")) {
+            return BinderClass.FieldKind.BOXED_DOUBLE;
+        } else if (name.equals("java.lang.Boolean")) {
+            return BinderClass.FieldKind.BOXED_BOOLEAN;
+        } else if (name.equals("java.lang.Character")) {
+            return BinderClass.FieldKind.BOXED_CHAR;
+        } else if (name.equals("java.lang.String")) {
+            return BinderClass.FieldKind.STRING;
+        } else if (name.equals(LAZY_TYPE)) {
+            return BinderClass.FieldKind.LAZY;
+        } else if (element.getKind() == ElementKind.ENUM) {
+            return BinderClass.FieldKind.ENUM;
+        } else if (mTypes.isSubtype(mTypes.erasure(type), mElements.getTypeElement(MODEL_TYPE).asType())
+                && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+            return BinderClass.FieldKind.MODEL;
+        }
+
+        // Date、Calendar等类型需要运行期查找TypeSerializer
+        return BinderClass.FieldKind.SERIALIZED;
+    }
+
+    /**
+     * 获取Lazy&lt;T&gt;中T的类名,T不是具体的Model类型时返回null
+     */
+    private String getLazyType(DeclaredType type) {
+        if (type.getTypeArguments().size() != 1) {
+            return null;
+        }
+
+        final TypeMirror argument = type.getTypeArguments().get(0);
+        if (argument.getKind() != TypeKind.DECLARED
+                || getDeclaredFieldKind((DeclaredType) argument) != BinderClass.FieldKind.MODEL) {
+            return null;
+        }
+
+        return mTypes.erasure(argument).toString();
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element.getKind().isClass() || element.getKind().isInterface()) {
+            final TypeElement typeElement = (TypeElement) element;
+            if (typeElement.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (typeElement.getNestingKind() == NestingKind.MEMBER
+                    && !typeElement.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            if (typeElement.getNestingKind() == NestingKind.LOCAL
+                    || typeElement.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+
+        return true;
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement packageElement = mElements.getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    private AnnotationMirror getAnnotationMirror(Element element, TypeElement annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mTypes.isSameType(mirror.getAnnotationType(), annotation.asType())) {
+                return mirror;
+            }
+        }
+
+        return null;
+    }
+
+    private String getColumnName(AnnotationMirror column) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : column.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("name")) {
+                return (String) entry.getValue().getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private void note(TypeElement model, String message) {
+        mMessager.printMessage(Kind.NOTE, model.getQualifiedName() + " " + message
+                + ", falling back to reflection.", model);
+    }
+}
@@ -62,16 +62,27 @@ public final class ActiveAndroid {
         return Cache.openDatabase();
     }
 
+    /**
+     * 开启事务.事务中产生的变更通知会被缓存,提交成功后每张表只通知一次,回滚时丢弃
+     */
     public static void beginTransaction() {
         Cache.openDatabase().beginTransaction();
+        Cache.getNotificationDispatcher().beginTransaction();
     }
 
     public static void endTransaction() {
-        Cache.openDatabase().endTransaction();
+        boolean ended = false;
+        try {
+            Cache.openDatabase().endTransaction();
+            ended = true;
+        } finally {
+            Cache.getNotificationDispatcher().endTransaction(ended);
+        }
     }
 
     public static void setTransactionSuccessful() {
         Cache.openDatabase().setTransactionSuccessful();
+        Cache.getNotificationDispatcher().setTransactionSuccessful();
     }
 
     public static boolean inTransaction() {
@@ -0,0 +1,229 @@
+package com.activeandroid;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.util.SQLiteUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 批量写入.
+ * 所有Model在同一个事务中写入,每张表的INSERT和UPDATE语句从Cache的StatementCache中借出,
+ * 每一行通过clearBindings()和bind*()复用同一个SQLiteStatement,事务提交后每张表只通知一次.
+ */
+public final class BatchWriter {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 每条DELETE语句中IN的参数个数,SQLite默认最多999个参数
+     */
+    private static final int DELETE_CHUNK_SIZE = 500;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private BatchWriter() {
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 批量插入或更新.id为null的Model执行插入并回填id,否则按id更新.
+     * 任意一行失败时整个事务回滚,本次插入回填的id也会被重置为null.
+     */
+    public static void saveAll(Collection<? extends Model> models) {
+        if (models == null || models.isEmpty()) {
+            return;
+        }
+
+        final SQLiteDatabase db = Cache.openDatabase();
+        final Map<TableInfo, SQLiteStatement> insertStatements = new HashMap<TableInfo, SQLiteStatement>();
+        final Map<TableInfo, SQLiteStatement> updateStatements = new HashMap<TableInfo, SQLiteStatement>();
+        final List<Model> insertedModels = new ArrayList<Model>();
+        final Set<Class<? extends Model>> changedTypes = new LinkedHashSet<Class<? extends Model>>();
+        boolean successful = false;
+
+        db.beginTransaction();
+        try {
+            for (Model model : models) {
+                final TableInfo tableInfo = model.getTableInfo();
+                final Long id = model.getId();
+
+                if (id == null) {
+                    SQLiteStatement statement = insertStatements.get(tableInfo);
+                    if (statement == null) {
+                        statement = Cache.acquireStatement(tableInfo.getInsertSql());
+                        insertStatements.put(tableInfo, statement);
+                    }
+
+                    statement.clearBindings();
+                    model.bindStatement(statement);
+                    final long rowId = statement.executeInsert();
+                    if (rowId != -1) {
+                        model.setId(rowId);
+                        insertedModels.add(model);
+                    }
+                } else {
+                    final String updateSql = tableInfo.getUpdateSql();
+                    if (updateSql == null || !model.hasChanges()) {
+                        // 除主键外没有其他列,或者开启了变更跟踪且没有修改,无需更新
+                        continue;
+                    }
+
+                    SQLiteStatement statement = updateStatements.get(tableInfo);
+                    if (statement == null) {
+                        statement = Cache.acquireStatement(updateSql);
+                        updateStatements.put(tableInfo, statement);
+                    }
+
+                    statement.clearBindings();
+                    model.bindStatement(statement);
+                    statement.bindLong(tableInfo.getBindColumnNames().length + 1, id);
+                    statement.execute();
+                }
+
+                changedTypes.add(tableInfo.getType());
+            }
+
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            for (Map.Entry<TableInfo, SQLiteStatement> entry : insertStatements.entrySet()) {
+                Cache.releaseStatement(entry.getKey().getInsertSql(), entry.getValue());
+            }
+            for (Map.Entry<TableInfo, SQLiteStatement> entry : updateStatements.entrySet()) {
+                Cache.releaseStatement(entry.getKey().getUpdateSql(), entry.getValue());
+            }
+
+            if (!successful) {
+                for (Model model : insertedModels) {
+                    model.setId(null);
+                }
+            }
+        }
+
+        for (Model model : models) {
+            if (model.getId() != null) {
+                Cache.addEntity(model);
+                model.takeSnapshot();
+            }
+        }
+
+        for (Class<? extends Model> type : changedTypes) {
+            Cache.getNotificationDispatcher().notifyChange(type, null);
+        }
+    }
+
+    /**
+     * 批量按唯一键插入或更新,见Model.upsert().
+     * 任意一行失败时整个事务回滚,每个Model的id恢复为调用前的值.
+     *
+     * @return 每个Model对应行的主键,顺序和models一致
+     */
+    public static List<Long> upsertAll(Collection<? extends Model> models) {
+        final List<Long> ids = new ArrayList<Long>();
+        if (models == null || models.isEmpty()) {
+            return ids;
+        }
+
+        for (Model model : models) {
+            Model.checkUniqueKey(model.getTableInfo());
+        }
+
+        final SQLiteDatabase db = Cache.openDatabase();
+        final List<Long> previousIds = new ArrayList<Long>(models.size());
+        final Set<Class<? extends Model>> changedTypes = new LinkedHashSet<Class<? extends Model>>();
+        boolean successful = false;
+
+        db.beginTransaction();
+        try {
+            for (Model model : models) {
+                previousIds.add(model.getId());
+                model.setId(model.upsertRow());
+                ids.add(model.getId());
+                changedTypes.add(model.getTableInfo().getType());
+            }
+
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+
+            if (!successful) {
+                int i = 0;
+                for (Model model : models) {
+                    if (i >= previousIds.size()) {
+                        break;
+                    }
+                    model.setId(previousIds.get(i++));
+                }
+            }
+        }
+
+        for (Model model : models) {
+            Cache.addEntity(model);
+            model.takeSnapshot();
+        }
+
+        for (Class<? extends Model> type : changedTypes) {
+            Cache.getNotificationDispatcher().notifyChange(type, null);
+        }
+
+        return ids;
+    }
+
+    /**
+     * 按主键批量删除.分批执行DELETE ... WHERE Id IN (...),所有批次在同一个事务中提交,
+     * 提交后从Cache中批量移除这些实体,并且只发送一次通知.
+     *
+     * @return 删除的行数
+     */
+    public static int deleteAll(Class<? extends Model> type, long[] ids) {
+        if (ids == null || ids.length == 0) {
+            return 0;
+        }
+
+        final TableInfo tableInfo = Cache.getTableInfo(type);
+        final SQLiteDatabase db = Cache.openDatabase();
+        int deleted = 0;
+
+        db.beginTransaction();
+        try {
+            for (int start = 0; start < ids.length; start += DELETE_CHUNK_SIZE) {
+                final int count = Math.min(DELETE_CHUNK_SIZE, ids.length - start);
+                final String sql = SQLiteUtils.createDeleteInSql(tableInfo, count);
+                final SQLiteStatement statement = Cache.acquireStatement(sql);
+                try {
+                    for (int i = 0; i < count; i++) {
+                        statement.bindLong(i + 1, ids[start + i]);
+                    }
+                    deleted += SQLiteUtils.executeUpdateDelete(statement);
+                } finally {
+                    Cache.releaseStatement(sql, statement);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Cache.removeEntities(type, ids);
+        Cache.getNotificationDispatcher().notifyChange(type, ids.length == 1 ? ids[0] : null);
+
+        return deleted;
+    }
+}
@@ -2,12 +2,17 @@ package com.activeandroid;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.support.v4.util.LruCache;
 
 import com.activeandroid.serializer.TypeSerializer;
 import com.activeandroid.util.Log;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public final class Cache {
     //////////////////////////////////////////////////////////////////////////////////////
@@ -15,6 +20,16 @@ public final class Cache {
     //////////////////////////////////////////////////////////////////////////////////////
 
     public static final int DEFAULT_CACHE_SIZE = 1024;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * dispose()等待写队列执行完已有操作的最长时间
+     */
+    private static final long WRITE_QUEUE_SHUTDOWN_TIMEOUT = 10000;
 
     //////////////////////////////////////////////////////////////////////////////////////
     // PRIVATE MEMBERS
@@ -26,10 +41,38 @@ public final class Cache {
      */
     private static Context sContext;
 
-    private static ModelInfo sModelInfo;
+    /**
+     * Model的元数据在initialize()中一次性加载,之后不再修改,通过volatile发布后读取时不需要加锁
+     */
+    private static volatile ModelInfo sModelInfo;
     private static DatabaseHelper sDatabaseHelper;
 
-    private static LruCache<String, Model> sEntities;
+    /**
+     * 已打开的数据库句柄,openDatabase()的快速路径,只有第一次打开时才需要加锁
+     */
+    private static volatile SQLiteDatabase sDatabase;
+
+    private static volatile EntityCache sEntities;
+
+    /**
+     * 一对多关联的子实体列表,key为"父实体标识>子表名.外键列名",子表修改后失效
+     */
+    private static LruCache<String, Relation> sRelations;
+
+    /**
+     * 已编译的SQLiteStatement缓存,以SQL文本为key
+     */
+    private static volatile StatementCache sStatements;
+
+    /**
+     * 数据变更通知的合并与分发
+     */
+    private static NotificationDispatcher sNotificationDispatcher;
+
+    /**
+     * 异步写队列
+     */
+    private static WriteQueue sWriteQueue;
 
     /**
      * ActiveAndroid的是否初始化标识
@@ -58,7 +101,12 @@ public final class Cache {
         sModelInfo = new ModelInfo(configuration);
         sDatabaseHelper = new DatabaseHelper(configuration);
 
-        sEntities = new LruCache<String, Model>(configuration.getCacheSize());
+        sEntities = new EntityCache(configuration.getCacheSize(), getCachePolicies(configuration),
+                configuration.getReferenceTier());
+        sRelations = new LruCache<String, Relation>(configuration.getCacheSize());
+        sStatements = new StatementCache(configuration.getStatementCacheSize());
+        sNotificationDispatcher = new NotificationDispatcher(sContext, configuration.getNotificationDebounce());
+        sWriteQueue = new WriteQueue(configuration.getWriteQueueCapacity());
 
         openDatabase();
 
@@ -67,24 +115,29 @@ public final class Cache {
         Log.v("ActiveAndroid initialized successfully.");
     }
 
-    public static synchronized void clear() {
-        sEntities.evictAll();
+    public static void clear() {
+        sEntities.clear();
+        sRelations.evictAll();
         Log.v("Cache cleared.");
     }
 
     /**
-     * 关闭数据库句柄,清理内存资源
+     * 关闭数据库句柄,清理内存资源.
+     * 写队列不再接收新的操作,已有的操作先执行完再关闭数据库,最多等待WRITE_QUEUE_SHUTDOWN_TIMEOUT.
      */
-    public static synchronized void dispose() {
-        closeDatabase();
-
-        sEntities = null;
-        sModelInfo = null;
-        sDatabaseHelper = null;
+    public static void dispose() {
+        final WriteQueue writeQueue;
+        synchronized (Cache.class) {
+            writeQueue = sWriteQueue;
+            sWriteQueue = null;
+        }
 
-        sIsInitialized = false;
+        // 在锁外等待,写线程重新打开数据库时需要Cache.class锁
+        if (writeQueue != null && !writeQueue.shutdown(WRITE_QUEUE_SHUTDOWN_TIMEOUT)) {
+            Log.w("WriteQueue did not finish its pending writes before dispose().");
+        }
 
-        Log.v("ActiveAndroid disposed. Call initialize to use library.");
+        release();
     }
 
     // Database access
@@ -93,20 +146,69 @@ public final class Cache {
         return sIsInitialized;
     }
 
-    public static synchronized SQLiteDatabase openDatabase() {
-        return sDatabaseHelper.getWritableDatabase();
+    public static SQLiteDatabase openDatabase() {
+        final SQLiteDatabase db = sDatabase;
+        if (db != null && db.isOpen()) {
+            return db;
+        }
+
+        synchronized (Cache.class) {
+            sDatabase = sDatabaseHelper.getWritableDatabase();
+            return sDatabase;
+        }
     }
 
     public static synchronized void closeDatabase() {
+        sDatabase = null;
+        // Statement只对编译它的数据库句柄有效,关闭数据库前先全部关闭
+        if (sStatements != null) {
+            sStatements.evictAll();
+        }
         sDatabaseHelper.close();
     }
 
+    // Statement cache
+
+    /**
+     * 借出一条已编译的SQLiteStatement,参数已清空,使用期间只属于当前线程.
+     * 使用完毕后必须调用releaseStatement()归还,通常写在finally中.
+     */
+    public static SQLiteStatement acquireStatement(String sql) {
+        return sStatements.acquire(openDatabase(), sql);
+    }
+
+    /**
+     * 归还acquireStatement()借出的Statement.数据库已经关闭或者已经dispose()时直接关闭它.
+     */
+    public static void releaseStatement(String sql, SQLiteStatement statement) {
+        final StatementCache statements = sStatements;
+        final SQLiteDatabase db = sDatabase;
+        if (statements == null || db == null) {
+            statement.close();
+            return;
+        }
+
+        statements.release(db, sql, statement);
+    }
+
     // Context access
 
     public static Context getContext() {
         return sContext;
     }
 
+    // Change notifications
+
+    public static NotificationDispatcher getNotificationDispatcher() {
+        return sNotificationDispatcher;
+    }
+
+    // Write queue
+
+    public static WriteQueue getWriteQueue() {
+        return sWriteQueue;
+    }
+
     // Entity cache
 
     public static String getIdentifier(Class<? extends Model> type, Long id) {
@@ -117,33 +219,171 @@ public final class Cache {
         return getIdentifier(entity.getClass(), entity.getId());
     }
 
-    public static synchronized void addEntity(Model entity) {
-        sEntities.put(getIdentifier(entity), entity);
+    public static void addEntity(Model entity) {
+        final Long id = entity.getId();
+        if (id != null) {
+            sEntities.put(entity.getClass(), id, entity);
+        }
     }
 
-    public static synchronized Model getEntity(Class<? extends Model> type, long id) {
-        return sEntities.get(getIdentifier(type, id));
+    public static Model getEntity(Class<? extends Model> type, long id) {
+        return sEntities.get(type, id);
     }
 
-    public static synchronized void removeEntity(Model entity) {
-        sEntities.remove(getIdentifier(entity));
+    public static void removeEntity(Model entity) {
+        final Long id = entity.getId();
+        if (id != null) {
+            sEntities.remove(entity.getClass(), id);
+        }
+    }
+
+    /**
+     * 批量移除type表中ids对应的实体
+     */
+    public static void removeEntities(Class<? extends Model> type, long[] ids) {
+        for (long id : ids) {
+            sEntities.remove(type, id);
+        }
+    }
+
+    /**
+     * 移除type表的所有实体,用于无法确定具体行的批量删除
+     */
+    public static void removeEntities(Class<? extends Model> type) {
+        sEntities.removeAll(type);
+    }
+
+    /**
+     * 第一级没有找到、从引用层中找回被淘汰实体的次数,见Configuration.Builder.setReferenceTier()
+     */
+    public static long getReferenceHitCount() {
+        return sEntities.getStats().getReferenceHitCount();
+    }
+
+    /**
+     * 实体缓存的统计数据快照:每张表的命中、未命中、写入、淘汰次数,当前实体个数和估算的内存占用
+     */
+    public static CacheStats getStats() {
+        return sEntities.getStats();
+    }
+
+    /**
+     * 清零实体缓存的统计计数,不移除缓存的实体
+     */
+    public static void resetStats() {
+        sEntities.resetStats();
+    }
+
+    // Relation cache
+
+    /**
+     * 缓存parent在type表中通过foreignKey关联的所有子实体,type表之后的任何写入都会使它失效.
+     *
+     * @param version 执行查询之前读取的getTableInfo(type).getVersion().
+     *                查询之后才读取时,查询和这里之间其他线程的写入会被当作已经包含在children中
+     */
+    public static void putRelation(Model parent, Class<? extends Model> type, String foreignKey,
+            List<? extends Model> children, int version) {
+        sRelations.put(getRelationKey(parent, type, foreignKey), new Relation(version, children));
+    }
+
+    /**
+     * 获取putRelation()缓存的子实体列表的拷贝,没有缓存或者已经失效时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Model> List<T> getRelation(Model parent, Class<T> type,
+            String foreignKey) {
+        final String key = getRelationKey(parent, type, foreignKey);
+        final Relation relation = sRelations.get(key);
+        if (relation == null) {
+            return null;
+        }
+
+        if (relation.version != getTableInfo(type).getVersion()) {
+            sRelations.remove(key);
+            return null;
+        }
+
+        return new ArrayList<T>((List<T>) relation.children);
+    }
+
+    /**
+     * 标记type表的数据已经修改,使缓存的关联列表失效.通过Model和查询写入时会自动调用.
+     */
+    public static void markTableChanged(Class<? extends Model> type) {
+        getTableInfo(type).incrementVersion();
     }
 
     // Model cache
 
-    public static synchronized Collection<TableInfo> getTableInfos() {
+    public static Collection<TableInfo> getTableInfos() {
         return sModelInfo.getTableInfos();
     }
 
-    public static synchronized TableInfo getTableInfo(Class<? extends Model> type) {
+    public static TableInfo getTableInfo(Class<? extends Model> type) {
         return sModelInfo.getTableInfo(type);
     }
 
-    public static synchronized TypeSerializer getParserForType(Class<?> type) {
+    public static TypeSerializer getParserForType(Class<?> type) {
         return sModelInfo.getTypeSerializer(type);
     }
 
-    public static synchronized String getTableName(Class<? extends Model> type) {
+    public static String getTableName(Class<? extends Model> type) {
         return sModelInfo.getTableInfo(type).getTableName();
     }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 关闭数据库,释放dispose()之后不再使用的资源
+     */
+    private static synchronized void release() {
+        closeDatabase();
+
+        sEntities = null;
+        sRelations = null;
+        sStatements = null;
+        if (sNotificationDispatcher != null) {
+            sNotificationDispatcher.cancelPending();
+        }
+        sNotificationDispatcher = null;
+        sModelInfo = null;
+        sDatabaseHelper = null;
+
+        sIsInitialized = false;
+
+        Log.v("ActiveAndroid disposed. Call initialize to use library.");
+    }
+
+    /**
+     * 每张表的缓存方式:Configuration中指定的优先,其次是Table注解
+     */
+    private static Map<Class<? extends Model>, CachePolicy> getCachePolicies(Configuration configuration) {
+        final Map<Class<? extends Model>, CachePolicy> policies = new HashMap<Class<? extends Model>, CachePolicy>();
+        for (TableInfo tableInfo : sModelInfo.getTableInfos()) {
+            final CachePolicy policy = configuration.getCachePolicy(tableInfo.getType());
+            policies.put(tableInfo.getType(), policy != null ? policy : tableInfo.getCachePolicy());
+        }
+        return policies;
+    }
+
+    private static String getRelationKey(Model parent, Class<? extends Model> type, String foreignKey) {
+        return getIdentifier(parent) + ">" + getTableName(type) + "." + foreignKey;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // INNER CLASSES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class Relation {
+        final int version;
+        final List<? extends Model> children;
+
+        Relation(int version, List<? extends Model> children) {
+            this.version = version;
+            this.children = new ArrayList<Model>(children);
+        }
+    }
 }
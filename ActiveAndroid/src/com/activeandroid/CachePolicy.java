@@ -0,0 +1,142 @@
+package com.activeandroid;
+
+import com.activeandroid.annotation.Table;
+
+/**
+ * 一张表的实体在Cache中的缓存方式,在Table注解中声明,或者通过Configuration.Builder.setCachePolicy()指定.
+ *
+ * 1. shared():默认方式,和其他表共享Configuration.getCacheSize()的容量,一起按LRU近似淘汰.
+ * 2. separate(size):使用单独的容量,淘汰只发生在这张表内部,高频写入的表不会挤掉其他表的实体.
+ * 3. pinned():实体一直保留直到被删除或者Cache.clear(),适合数量少、读取频繁的基础数据.
+ * 4. disabled():不缓存,每次都从数据库读取新的对象.
+ *
+ * withTtl()可以和以上任意一种组合,实体放入缓存超过指定时间后不再返回.
+ */
+public final class CachePolicy {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC ENUMERATIONS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 被LRU淘汰的实体的保存方式,通过Configuration.Builder.setReferenceTier()指定,对所有会淘汰实体的表生效
+     */
+    public enum ReferenceTier {
+        /**
+         * 直接丢弃,默认方式
+         */
+        NONE,
+        /**
+         * 保存弱引用:实体只要还被其他对象引用就能找回
+         */
+        WEAK,
+        /**
+         * 保存软引用:实体在内存不足之前都能找回,会占用更多内存
+         */
+        SOFT
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private static final CachePolicy SHARED = new CachePolicy(Table.CacheMode.SHARED, 0, 0);
+
+    private final Table.CacheMode mMode;
+    private final int mCapacity;
+    private final long mTtlMillis;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private CachePolicy(Table.CacheMode mode, int capacity, long ttlMillis) {
+        mMode = mode;
+        mCapacity = capacity;
+        mTtlMillis = ttlMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public static CachePolicy shared() {
+        return SHARED;
+    }
+
+    public static CachePolicy separate(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        return new CachePolicy(Table.CacheMode.SEPARATE, capacity, 0);
+    }
+
+    public static CachePolicy pinned() {
+        return new CachePolicy(Table.CacheMode.PINNED, 0, 0);
+    }
+
+    public static CachePolicy disabled() {
+        return new CachePolicy(Table.CacheMode.DISABLED, 0, 0);
+    }
+
+    /**
+     * 返回一个实体在缓存中最多保留ttlMillis毫秒的拷贝,0表示不过期
+     */
+    public CachePolicy withTtl(long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("ttlMillis < 0");
+        }
+        return new CachePolicy(mMode, mCapacity, ttlMillis);
+    }
+
+    /**
+     * 读取type的Table注解声明的缓存方式.cacheMode为SEPARATE时必须同时指定大于0的cacheSize.
+     */
+    public static CachePolicy of(Class<?> type, Table table) {
+        final CachePolicy policy;
+        switch (table.cacheMode()) {
+            case SEPARATE:
+                if (table.cacheSize() <= 0) {
+                    throw new IllegalArgumentException(type.getName()
+                            + " declares @Table(cacheMode = SEPARATE) without a cacheSize greater than 0.");
+                }
+                policy = separate(table.cacheSize());
+                break;
+            case PINNED:
+                policy = pinned();
+                break;
+            case DISABLED:
+                policy = disabled();
+                break;
+            default:
+                policy = shared();
+                break;
+        }
+
+        return table.cacheTtl() > 0 ? policy.withTtl(table.cacheTtl()) : policy;
+    }
+
+    public Table.CacheMode getMode() {
+        return mMode;
+    }
+
+    /**
+     * separate()的容量,其他方式为0
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public long getTtlMillis() {
+        return mTtlMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // OVERRIDEN METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return "CachePolicy{" + mMode + (mCapacity > 0 ? ", capacity=" + mCapacity : "")
+                + (mTtlMillis > 0 ? ", ttl=" + mTtlMillis + "ms" : "") + "}";
+    }
+}
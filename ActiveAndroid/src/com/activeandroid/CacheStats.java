@@ -0,0 +1,257 @@
+package com.activeandroid;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 实体缓存的统计数据快照,由Cache.getStats()创建,创建之后不再变化.
+ *
+ * 计数从Cache初始化或者上一次Cache.resetStats()开始累计.各个计数器分别读取,并发读写时它们之间可能有细微的不一致.
+ * 内存占用是按每张表的列类型估算的,只用于比较和确定缓存容量,不是精确值.
+ */
+public final class CacheStats {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final List<TableStats> mTables;
+
+    /**
+     * 查询了还没有任何缓存实体的表的次数,不属于任何一张表
+     */
+    private final long mUntrackedMissCount;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    CacheStats(List<TableStats> tables, long untrackedMissCount) {
+        mTables = Collections.unmodifiableList(tables);
+        mUntrackedMissCount = untrackedMissCount;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public List<TableStats> getTables() {
+        return mTables;
+    }
+
+    /**
+     * type表的统计数据,这张表还没有使用过缓存时返回null
+     */
+    public TableStats getTable(Class<? extends Model> type) {
+        for (TableStats table : mTables) {
+            if (table.mType.equals(type)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    public long getHitCount() {
+        long count = 0;
+        for (TableStats table : mTables) {
+            count += table.mHitCount;
+        }
+        return count;
+    }
+
+    public long getReferenceHitCount() {
+        long count = 0;
+        for (TableStats table : mTables) {
+            count += table.mReferenceHitCount;
+        }
+        return count;
+    }
+
+    public long getMissCount() {
+        long count = mUntrackedMissCount;
+        for (TableStats table : mTables) {
+            count += table.mMissCount;
+        }
+        return count;
+    }
+
+    public long getPutCount() {
+        long count = 0;
+        for (TableStats table : mTables) {
+            count += table.mPutCount;
+        }
+        return count;
+    }
+
+    public long getEvictionCount() {
+        long count = 0;
+        for (TableStats table : mTables) {
+            count += table.mEvictionCount;
+        }
+        return count;
+    }
+
+    public long getExpirationCount() {
+        long count = 0;
+        for (TableStats table : mTables) {
+            count += table.mExpirationCount;
+        }
+        return count;
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (TableStats table : mTables) {
+            size += table.mSize;
+        }
+        return size;
+    }
+
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (TableStats table : mTables) {
+            bytes += table.getEstimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 命中率,包括从引用层找回的实体.没有任何查询时为0.
+     */
+    public double getHitRate() {
+        return hitRate(getHitCount() + getReferenceHitCount(), getMissCount());
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // OVERRIDEN METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("CacheStats{size=").append(getSize());
+        builder.append(", hitRate=").append(String.format("%.3f", getHitRate()));
+        builder.append(", misses=").append(getMissCount());
+        builder.append(", evictions=").append(getEvictionCount());
+        builder.append(", bytes~").append(getEstimatedBytes());
+        for (TableStats table : mTables) {
+            builder.append(", ").append(table);
+        }
+        builder.append("}");
+
+        return builder.toString();
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private static double hitRate(long hits, long misses) {
+        final long requests = hits + misses;
+        return requests > 0 ? (double) hits / requests : 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // INNER CLASSES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 一张表的统计数据
+     */
+    public static final class TableStats {
+        private final Class<? extends Model> mType;
+        private final long mHitCount;
+        private final long mReferenceHitCount;
+        private final long mMissCount;
+        private final long mPutCount;
+        private final long mEvictionCount;
+        private final long mExpirationCount;
+        private final int mSize;
+        private final int mReferenceSize;
+        private final int mEstimatedEntitySize;
+
+        TableStats(Class<? extends Model> type, long hitCount, long referenceHitCount, long missCount,
+                long putCount, long evictionCount, long expirationCount, int size, int referenceSize,
+                int estimatedEntitySize) {
+            mType = type;
+            mHitCount = hitCount;
+            mReferenceHitCount = referenceHitCount;
+            mMissCount = missCount;
+            mPutCount = putCount;
+            mEvictionCount = evictionCount;
+            mExpirationCount = expirationCount;
+            mSize = size;
+            mReferenceSize = referenceSize;
+            mEstimatedEntitySize = estimatedEntitySize;
+        }
+
+        public Class<? extends Model> getType() {
+            return mType;
+        }
+
+        public long getHitCount() {
+            return mHitCount;
+        }
+
+        /**
+         * 第一级没有找到、从引用层中找回实体的次数
+         */
+        public long getReferenceHitCount() {
+            return mReferenceHitCount;
+        }
+
+        public long getMissCount() {
+            return mMissCount;
+        }
+
+        public long getPutCount() {
+            return mPutCount;
+        }
+
+        /**
+         * 因为超过容量被淘汰的实体个数
+         */
+        public long getEvictionCount() {
+            return mEvictionCount;
+        }
+
+        /**
+         * 因为超过过期时间被移除的实体个数
+         */
+        public long getExpirationCount() {
+            return mExpirationCount;
+        }
+
+        /**
+         * 第一级中的实体个数
+         */
+        public int getSize() {
+            return mSize;
+        }
+
+        /**
+         * 引用层中的引用个数,包括已经被回收但还没有清理的引用
+         */
+        public int getReferenceSize() {
+            return mReferenceSize;
+        }
+
+        /**
+         * 第一级实体占用的内存估算值,按每个实体的列类型和缓存本身的开销计算
+         */
+        public long getEstimatedBytes() {
+            return (long) mSize * mEstimatedEntitySize;
+        }
+
+        public double getHitRate() {
+            return hitRate(mHitCount + mReferenceHitCount, mMissCount);
+        }
+
+        @Override
+        public String toString() {
+            return mType.getSimpleName() + "{size=" + mSize + ", hits=" + mHitCount
+                    + ", referenceHits=" + mReferenceHitCount + ", misses=" + mMissCount
+                    + ", puts=" + mPutCount + ", evictions=" + mEvictionCount
+                    + ", expirations=" + mExpirationCount + "}";
+        }
+    }
+}
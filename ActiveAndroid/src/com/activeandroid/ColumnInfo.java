@@ -0,0 +1,546 @@
+package com.activeandroid;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
+
+import com.activeandroid.annotation.Column;
+import com.activeandroid.binder.BinderUtils;
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.Log;
+import com.activeandroid.util.ReflectionUtils;
+import com.activeandroid.util.SQLiteUtils;
+import com.activeandroid.util.SQLiteUtils.SQLiteType;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+/**
+ * 表中一列的描述信息,在ModelInfo加载完成后由TableInfo一次性创建,之后不再改变.
+ * 列对应的TypeSerializer、读写方式和SQLite类型都已提前确定,
+ * 所以Model.save()和Model.loadFromCursor()每一行只需要遍历ColumnInfo数组,不再查表和加锁.
+ */
+@SuppressWarnings("unchecked")
+public final class ColumnInfo {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // ENUMERATIONS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 列值在ContentValues和Cursor中的读写方式
+     */
+    public enum ValueType {
+        BYTE, SHORT, INTEGER, LONG, FLOAT, DOUBLE, BOOLEAN, CHARACTER, STRING, BLOB, MODEL, ENUM, UNSUPPORTED;
+
+        public static ValueType of(Class<?> type) {
+            if (type.equals(Byte.class) || type.equals(byte.class)) {
+                return BYTE;
+            } else if (type.equals(Short.class) || type.equals(short.class)) {
+                return SHORT;
+            } else if (type.equals(Integer.class) || type.equals(int.class)) {
+                return INTEGER;
+            } else if (type.equals(Long.class) || type.equals(long.class)) {
+                return LONG;
+            } else if (type.equals(Float.class) || type.equals(float.class)) {
+                return FLOAT;
+            } else if (type.equals(Double.class) || type.equals(double.class)) {
+                return DOUBLE;
+            } else if (type.equals(Boolean.class) || type.equals(boolean.class)) {
+                return BOOLEAN;
+            } else if (type.equals(Character.class) || type.equals(char.class)) {
+                return CHARACTER;
+            } else if (type.equals(String.class)) {
+                return STRING;
+            } else if (type.equals(Byte[].class) || type.equals(byte[].class)) {
+                return BLOB;
+            } else if (ReflectionUtils.isModel(type)) {
+                return MODEL;
+            } else if (ReflectionUtils.isSubclassOf(type, Enum.class)) {
+                return ENUM;
+            }
+
+            return UNSUPPORTED;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final Field mField;
+    private final String mName;
+    private final boolean mPrimaryKey;
+    private final Column mColumn;
+    private final TypeSerializer mTypeSerializer;
+
+    /**
+     * 写入数据库的类型,有TypeSerializer时为序列化后的类型,Lazy成员为引用的Model类型
+     */
+    private final Class<?> mSerializedType;
+    private final ValueType mValueType;
+    private final SQLiteType mSQLiteType;
+
+    /**
+     * 成员是基本类型且没有TypeSerializer,此时通过Field.getInt()/setInt()等方法直接读写,不装箱
+     */
+    private final boolean mPrimitive;
+
+    /**
+     * 成员类型是Lazy,读写时只处理外键id
+     */
+    private final boolean mLazy;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    ColumnInfo(Field field, String name, boolean primaryKey, TypeSerializer typeSerializer) {
+        mField = field;
+        mName = name;
+        mPrimaryKey = primaryKey;
+        mColumn = field.getAnnotation(Column.class);
+        mTypeSerializer = typeSerializer;
+        mLazy = Lazy.class.equals(field.getType());
+        if (mLazy) {
+            mSerializedType = getLazyType(field);
+        } else {
+            mSerializedType = typeSerializer != null ? typeSerializer.getSerializedType() : field.getType();
+        }
+        mValueType = ValueType.of(mSerializedType);
+        mSQLiteType = SQLiteUtils.getSQLiteType(mSerializedType);
+        mPrimitive = field.getType().isPrimitive() && typeSerializer == null;
+
+        // 只在初始化时调用一次setAccessible
+        mField.setAccessible(true);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public Field getField() {
+        return mField;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 是否是主键列,即Model中的mId
+     */
+    public boolean isPrimaryKey() {
+        return mPrimaryKey;
+    }
+
+    /**
+     * 列的Column注解,主键列没有注解,返回null
+     */
+    public Column getColumn() {
+        return mColumn;
+    }
+
+    public TypeSerializer getTypeSerializer() {
+        return mTypeSerializer;
+    }
+
+    public Class<?> getSerializedType() {
+        return mSerializedType;
+    }
+
+    /**
+     * 是否是延迟加载的外键,此时getSerializedType()为引用的Model类型
+     */
+    public boolean isLazy() {
+        return mLazy;
+    }
+
+    public ValueType getValueType() {
+        return mValueType;
+    }
+
+    /**
+     * 列对应的SQLite类型,无法映射时返回null
+     */
+    public SQLiteType getSQLiteType() {
+        return mSQLiteType;
+    }
+
+    /**
+     * 读取Model中这一列的值,写入ContentValues
+     */
+    public void bindValue(Model model, ContentValues values) throws IllegalAccessException {
+        if (mLazy) {
+            putValue(values, mName, ValueType.LONG, getLazyId(model));
+            return;
+        }
+
+        Object value = mField.get(model);
+        ValueType valueType = mValueType;
+
+        if (value != null && mTypeSerializer != null) {
+            // serialize data
+            value = mTypeSerializer.serialize(value);
+            // check that the serializer returned what it promised
+            if (value != null && !value.getClass().equals(mSerializedType)) {
+                Log.w(String.format("TypeSerializer returned wrong type: expected a %s but got a %s",
+                        mSerializedType, value.getClass()));
+                valueType = ValueType.of(value.getClass());
+            }
+        }
+
+        putValue(values, mName, valueType, value);
+    }
+
+    /**
+     * 读取Model中这一列的值,绑定到SQLiteStatement的第index个参数
+     */
+    public void bindValue(Model model, SQLiteProgram statement, int index) throws IllegalAccessException {
+        if (mPrimitive) {
+            bindPrimitive(model, statement, index);
+            return;
+        } else if (mLazy) {
+            bindValue(statement, index, ValueType.LONG, getLazyId(model));
+            return;
+        }
+
+        Object value = mField.get(model);
+        ValueType valueType = mValueType;
+
+        if (value != null && mTypeSerializer != null) {
+            value = mTypeSerializer.serialize(value);
+            if (value != null && !value.getClass().equals(mSerializedType)) {
+                valueType = ValueType.of(value.getClass());
+            }
+        }
+
+        bindValue(statement, index, valueType, value);
+    }
+
+    /**
+     * 读取Model中这一列写入数据库时的值,用于变更跟踪.
+     * 关联的Model记录为id,枚举记录为name,byte数组会复制一份,避免原数组被修改后检测不到变化.
+     */
+    public Object getSnapshotValue(Model model) throws IllegalAccessException {
+        if (mLazy) {
+            return getLazyId(model);
+        }
+
+        Object value = mField.get(model);
+
+        if (value != null && mTypeSerializer != null) {
+            value = mTypeSerializer.serialize(value);
+        }
+
+        if (value instanceof Model) {
+            return ((Model) value).getId();
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        } else if (value instanceof Byte[]) {
+            return ((Byte[]) value).clone();
+        }
+
+        return value;
+    }
+
+    /**
+     * 比较getSnapshotValue()返回的两个值是否相同
+     */
+    public static boolean snapshotEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        } else if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        } else if (a instanceof Object[] && b instanceof Object[]) {
+            return Arrays.equals((Object[]) a, (Object[]) b);
+        }
+
+        return a.equals(b);
+    }
+
+    /**
+     * 从Cursor的columnIndex列读取值,设置到Model中.列值为NULL时不修改Model.
+     */
+    public void loadValue(Model model, Cursor cursor, int columnIndex) throws IllegalAccessException {
+        if (cursor.isNull(columnIndex)) {
+            return;
+        }
+
+        if (mPrimitive) {
+            loadPrimitive(model, cursor, columnIndex);
+            return;
+        } else if (mLazy) {
+            mField.set(model, Lazy.of((Class<? extends Model>) mSerializedType, cursor.getLong(columnIndex)));
+            return;
+        }
+
+        Object value = readValue(cursor, columnIndex, mValueType, mSerializedType);
+
+        // Use a deserializer if one is available
+        if (mTypeSerializer != null) {
+            value = mTypeSerializer.deserialize(value);
+        }
+
+        // Set the field value
+        if (value != null) {
+            mField.set(model, value);
+        }
+    }
+
+    /**
+     * 把Model中这一列恢复为默认值:对象为null,基本类型为0或false.
+     * 复用同一个Model读取多行时,用来清除上一行中有值而这一行为NULL的列.
+     */
+    public void clearValue(Model model) throws IllegalAccessException {
+        if (!mField.getType().isPrimitive()) {
+            mField.set(model, null);
+            return;
+        }
+
+        final Class<?> type = mField.getType();
+        if (type == boolean.class) {
+            mField.setBoolean(model, false);
+        } else if (type == char.class) {
+            mField.setChar(model, '\0');
+        } else if (type == byte.class) {
+            mField.setByte(model, (byte) 0);
+        } else if (type == short.class) {
+            mField.setShort(model, (short) 0);
+        } else if (type == int.class) {
+            mField.setInt(model, 0);
+        } else if (type == long.class) {
+            mField.setLong(model, 0L);
+        } else if (type == float.class) {
+            mField.setFloat(model, 0f);
+        } else if (type == double.class) {
+            mField.setDouble(model, 0d);
+        }
+    }
+
+    /**
+     * 按照valueType将已经序列化的值写入ContentValues
+     */
+    public static void putValue(ContentValues values, String name, ValueType valueType, Object value) {
+        if (value == null) {
+            values.putNull(name);
+            return;
+        }
+
+        switch (valueType) {
+            case BYTE:
+                values.put(name, (Byte) value);
+                break;
+            case SHORT:
+                values.put(name, (Short) value);
+                break;
+            case INTEGER:
+                values.put(name, (Integer) value);
+                break;
+            case LONG:
+                values.put(name, (Long) value);
+                break;
+            case FLOAT:
+                values.put(name, (Float) value);
+                break;
+            case DOUBLE:
+                values.put(name, (Double) value);
+                break;
+            case BOOLEAN:
+                values.put(name, (Boolean) value);
+                break;
+            case CHARACTER:
+            case STRING:
+                values.put(name, value.toString());
+                break;
+            case BLOB:
+                values.put(name, (byte[]) value);
+                break;
+            case MODEL:
+                values.put(name, ((Model) value).getId());
+                break;
+            case ENUM:
+                values.put(name, ((Enum<?>) value).name());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 按照valueType将已经序列化的值绑定到SQLiteStatement的第index个参数
+     */
+    public static void bindValue(SQLiteProgram statement, int index, ValueType valueType, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+            return;
+        }
+
+        switch (valueType) {
+            case BYTE:
+            case SHORT:
+            case INTEGER:
+            case LONG:
+                statement.bindLong(index, ((Number) value).longValue());
+                break;
+            case FLOAT:
+            case DOUBLE:
+                statement.bindDouble(index, ((Number) value).doubleValue());
+                break;
+            case BOOLEAN:
+                statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+                break;
+            case CHARACTER:
+            case STRING:
+                statement.bindString(index, value.toString());
+                break;
+            case BLOB:
+                statement.bindBlob(index, (byte[]) value);
+                break;
+            case MODEL: {
+                final Long id = ((Model) value).getId();
+                if (id != null) {
+                    statement.bindLong(index, id);
+                } else {
+                    statement.bindNull(index);
+                }
+                break;
+            }
+            case ENUM:
+                statement.bindString(index, ((Enum<?>) value).name());
+                break;
+            default:
+                statement.bindNull(index);
+                break;
+        }
+    }
+
+    /**
+     * 按照valueType从Cursor中读取值,调用方需要保证列值不为NULL
+     */
+    public static Object readValue(Cursor cursor, int columnIndex, ValueType valueType, Class<?> type) {
+        switch (valueType) {
+            case BYTE:
+                return (byte) cursor.getInt(columnIndex);
+            case SHORT:
+                return cursor.getShort(columnIndex);
+            case INTEGER:
+                return cursor.getInt(columnIndex);
+            case LONG:
+                return cursor.getLong(columnIndex);
+            case FLOAT:
+                return cursor.getFloat(columnIndex);
+            case DOUBLE:
+                return cursor.getDouble(columnIndex);
+            case BOOLEAN:
+                return cursor.getInt(columnIndex) != 0;
+            case CHARACTER:
+                return cursor.getString(columnIndex).charAt(0);
+            case STRING:
+                return cursor.getString(columnIndex);
+            case BLOB:
+                return cursor.getBlob(columnIndex);
+            case MODEL:
+                return BinderUtils.loadEntity((Class<? extends Model>) type, cursor.getLong(columnIndex));
+            case ENUM: {
+                @SuppressWarnings("rawtypes")
+                final Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+                return Enum.valueOf(enumType, cursor.getString(columnIndex));
+            }
+            default:
+                return null;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 从Lazy&lt;T&gt;的泛型参数中取出引用的Model类型
+     */
+    private static Class<?> getLazyType(Field field) {
+        final Type genericType = field.getGenericType();
+        if (genericType instanceof ParameterizedType) {
+            final Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            if (argument instanceof Class && ReflectionUtils.isModel((Class<?>) argument)) {
+                return (Class<?>) argument;
+            }
+        }
+
+        throw new IllegalArgumentException("Lazy column " + field.getDeclaringClass().getName() + "."
+                + field.getName() + " must declare a concrete Model type argument.");
+    }
+
+    private Long getLazyId(Model model) throws IllegalAccessException {
+        final Lazy<?> reference = (Lazy<?>) mField.get(model);
+        return reference != null ? reference.getId() : null;
+    }
+
+    private void bindPrimitive(Model model, SQLiteProgram statement, int index) throws IllegalAccessException {
+        switch (mValueType) {
+            case BYTE:
+                statement.bindLong(index, mField.getByte(model));
+                break;
+            case SHORT:
+                statement.bindLong(index, mField.getShort(model));
+                break;
+            case INTEGER:
+                statement.bindLong(index, mField.getInt(model));
+                break;
+            case LONG:
+                statement.bindLong(index, mField.getLong(model));
+                break;
+            case FLOAT:
+                statement.bindDouble(index, mField.getFloat(model));
+                break;
+            case DOUBLE:
+                statement.bindDouble(index, mField.getDouble(model));
+                break;
+            case BOOLEAN:
+                statement.bindLong(index, mField.getBoolean(model) ? 1 : 0);
+                break;
+            case CHARACTER:
+                statement.bindString(index, String.valueOf(mField.getChar(model)));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void loadPrimitive(Model model, Cursor cursor, int columnIndex) throws IllegalAccessException {
+        switch (mValueType) {
+            case BYTE:
+                mField.setByte(model, (byte) cursor.getInt(columnIndex));
+                break;
+            case SHORT:
+                mField.setShort(model, cursor.getShort(columnIndex));
+                break;
+            case INTEGER:
+                mField.setInt(model, cursor.getInt(columnIndex));
+                break;
+            case LONG:
+                mField.setLong(model, cursor.getLong(columnIndex));
+                break;
+            case FLOAT:
+                mField.setFloat(model, cursor.getFloat(columnIndex));
+                break;
+            case DOUBLE:
+                mField.setDouble(model, cursor.getDouble(columnIndex));
+                break;
+            case BOOLEAN:
+                mField.setBoolean(model, cursor.getInt(columnIndex) != 0);
+                break;
+            case CHARACTER:
+                mField.setChar(model, cursor.getString(columnIndex).charAt(0));
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.activeandroid;
+
+import com.activeandroid.binder.BinderUtils;
+
+/**
+ * 一种查询结果的列结构到Model每一列的下标映射,由TableInfo按Cursor的列名缓存.
+ *
+ * 同一个Cursor的每一行列结构都相同,所以只需要在第一行之前计算一次,
+ * 之后每一行只按下标读取,不再比较列名.
+ */
+public final class ColumnMapping {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 主键在Cursor中的下标,不存在时为-1
+     */
+    private final int mIdIndex;
+
+    /**
+     * 和TableInfo.getLoadColumnNames()一一对应的Cursor下标,不存在的列为-1
+     */
+    private final int[] mColumnIndexes;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    ColumnMapping(String[] cursorColumnNames, String idName, String[] columnNames) {
+        mIdIndex = BinderUtils.getColumnIndex(cursorColumnNames, idName);
+        mColumnIndexes = BinderUtils.getColumnIndexes(cursorColumnNames, columnNames);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public int getIdIndex() {
+        return mIdIndex;
+    }
+
+    /**
+     * 返回的是内部数组,调用方不要修改
+     */
+    public int[] getColumnIndexes() {
+        return mColumnIndexes;
+    }
+}
@@ -8,7 +8,10 @@ import com.activeandroid.util.ReflectionUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Configuration {
 
@@ -54,6 +57,31 @@ public class Configuration {
      */
     private int mCacheSize;
 
+    /**
+     * 通过Builder指定的每张表的缓存方式,优先于Table注解
+     */
+    private Map<Class<? extends Model>, CachePolicy> mCachePolicies;
+
+    /**
+     * 被淘汰实体的保存方式
+     */
+    private CachePolicy.ReferenceTier mReferenceTier;
+
+    /**
+     * 已编译SQLiteStatement缓存的大小,0表示不缓存
+     */
+    private int mStatementCacheSize;
+
+    /**
+     * 事务之外合并变更通知的时间窗口,单位毫秒,0表示立即通知
+     */
+    private long mNotificationDebounce;
+
+    /**
+     * 异步写队列的容量,写满时提交写操作的线程会阻塞
+     */
+    private int mWriteQueueCapacity;
+
     //////////////////////////////////////////////////////////////////////////////////////
     // CONSTRUCTORS
     //////////////////////////////////////////////////////////////////////////////////////
@@ -94,6 +122,29 @@ public class Configuration {
         return mCacheSize;
     }
 
+    /**
+     * 通过Builder为type指定的缓存方式,没有指定时返回null,此时使用Table注解声明的方式
+     */
+    public CachePolicy getCachePolicy(Class<? extends Model> type) {
+        return mCachePolicies.get(type);
+    }
+
+    public CachePolicy.ReferenceTier getReferenceTier() {
+        return mReferenceTier;
+    }
+
+    public int getStatementCacheSize() {
+        return mStatementCacheSize;
+    }
+
+    public long getNotificationDebounce() {
+        return mNotificationDebounce;
+    }
+
+    public int getWriteQueueCapacity() {
+        return mWriteQueueCapacity;
+    }
+
     /**
      * 判断当前的Configuration对象是否有效
      * 有效的依据是：当前表集合是否不为空
@@ -118,6 +169,7 @@ public class Configuration {
         private final static String AA_SQL_PARSER = "AA_SQL_PARSER";
 
         private static final int DEFAULT_CACHE_SIZE = 1024;
+        private static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
         private static final String DEFAULT_DB_NAME = "Application.db";
         private static final String DEFAULT_SQL_PARSER = SQL_PARSER_LEGACY;
 
@@ -128,6 +180,12 @@ public class Configuration {
         private Context mContext;
 
         private Integer mCacheSize;
+        private Map<Class<? extends Model>, CachePolicy> mCachePolicies =
+                new HashMap<Class<? extends Model>, CachePolicy>();
+        private CachePolicy.ReferenceTier mReferenceTier = CachePolicy.ReferenceTier.NONE;
+        private Integer mStatementCacheSize;
+        private long mNotificationDebounce;
+        private int mWriteQueueCapacity = WriteQueue.DEFAULT_CAPACITY;
         private String mDatabaseName;
         private Integer mDatabaseVersion;
         private String mSqlParser;
@@ -141,6 +199,7 @@ public class Configuration {
         public Builder(Context context) {
             mContext = context.getApplicationContext();
             mCacheSize = DEFAULT_CACHE_SIZE;
+            mStatementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
         }
 
         //////////////////////////////////////////////////////////////////////////////////////
@@ -152,6 +211,48 @@ public class Configuration {
             return this;
         }
 
+        /**
+         * 指定type的实体在Cache中的缓存方式,覆盖Table注解中的声明
+         */
+        public Builder setCachePolicy(Class<? extends Model> type, CachePolicy policy) {
+            mCachePolicies.put(type, policy);
+            return this;
+        }
+
+        /**
+         * 设置被淘汰实体的保存方式,默认为NONE.
+         * 开启后仍在使用的实体被淘汰后还能找回,同一行不会出现两个实例,见EntityCache.
+         */
+        public Builder setReferenceTier(CachePolicy.ReferenceTier referenceTier) {
+            mReferenceTier = referenceTier;
+            return this;
+        }
+
+        /**
+         * 设置已编译SQLiteStatement缓存的大小,传入0关闭缓存
+         */
+        public Builder setStatementCacheSize(int statementCacheSize) {
+            mStatementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        /**
+         * 设置事务之外合并变更通知的时间窗口,单位毫秒.
+         * 窗口内同一张表的多次变更只通知一次,默认为0,即每次变更立即通知.
+         */
+        public Builder setNotificationDebounce(long debounceMillis) {
+            mNotificationDebounce = debounceMillis;
+            return this;
+        }
+
+        /**
+         * 设置异步写队列的容量,队列写满时Model.saveAsync()等方法会阻塞调用线程
+         */
+        public Builder setWriteQueueCapacity(int writeQueueCapacity) {
+            mWriteQueueCapacity = writeQueueCapacity;
+            return this;
+        }
+
         public Builder setDatabaseName(String databaseName) {
             mDatabaseName = databaseName;
             return this;
@@ -223,6 +324,12 @@ public class Configuration {
         public Configuration create() {
             Configuration configuration = new Configuration(mContext);
             configuration.mCacheSize = mCacheSize;
+            configuration.mCachePolicies = Collections.unmodifiableMap(
+                    new HashMap<Class<? extends Model>, CachePolicy>(mCachePolicies));
+            configuration.mReferenceTier = mReferenceTier;
+            configuration.mStatementCacheSize = mStatementCacheSize;
+            configuration.mNotificationDebounce = mNotificationDebounce;
+            configuration.mWriteQueueCapacity = mWriteQueueCapacity;
 
             // 获取数据库名称
             if (mDatabaseName != null) {
@@ -0,0 +1,842 @@
+package com.activeandroid;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Model实体的缓存(identity map),由Cache持有,可以被多个线程同时读写而不需要全局锁.
+ *
+ * 每张表的实体保存在一个以long主键为key的开放寻址表(LongTable)中,查找时不拼接字符串,也不装箱.
+ * get()不加锁,只在实体第一次被再次访问时写一次mReferenced标记;写入只锁住对应的那张表.
+ *
+ * 每张表按CachePolicy属于一个淘汰域(Domain):SHARED的表共享一个域,SEPARATE的表各自一个域,
+ * PINNED的表不淘汰,DISABLED的表不缓存.一个域中的实体超过容量时只在这个域内部淘汰.
+ * 淘汰使用CLOCK算法(second chance)近似LRU:每次put()把实体追加到域的队列末尾,
+ * 超过容量时从队首取出实体,被访问过的清除标记后重新放回队尾,没有被访问过的移除.
+ * 淘汰由超过容量的put()线程自己完成,多个线程同时淘汰也是安全的,最多短暂地少于容量.
+ * 设置了过期时间的实体在get()时检查,过期的实体被移除.没有再被访问的过期实体由put()清理:
+ * 每经过一个过期时间,这张表的下一次put()扫描整张表移除过期的实体,不淘汰的PINNED表也不会一直保留它们.
+ *
+ * 开启引用层(ReferenceTier)时,被淘汰的实体不直接丢弃,而是以弱引用或软引用保存.
+ * 之后get()在第一级找不到时查找引用层,实体仍然存活(例如还被界面持有)就重新放回第一级并返回同一个对象,
+ * 避免同一行出现两个实例.引用层不阻止GC回收实体,被回收的引用通过ReferenceQueue在put()时清理.
+ *
+ * 每张表记录命中、未命中、写入、淘汰和过期的次数,使用分段计数器(Counter),get()计数时不分配对象也不争用同一个变量.
+ */
+final class EntityCache {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 估算内存占用时使用的大小,按32位虚拟机的对象布局取近似值
+     */
+    private static final int REFERENCE_SIZE = 4;
+    private static final int BOXED_SIZE = REFERENCE_SIZE + 12;
+    private static final int VARIABLE_SIZE = 48;
+    private static final int ENTITY_OVERHEAD = 8 + 24;
+    private static final int CACHE_OVERHEAD = 32 + 2 * REFERENCE_SIZE + 16;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final ConcurrentHashMap<Class<? extends Model>, EntityTable> mTables =
+            new ConcurrentHashMap<Class<? extends Model>, EntityTable>();
+
+    /**
+     * SHARED表共用的淘汰域
+     */
+    private final Domain mSharedDomain;
+
+    /**
+     * 没有在policies中出现的表使用的缓存方式
+     */
+    private final CachePolicy mDefaultPolicy = CachePolicy.shared();
+    private final Map<Class<? extends Model>, CachePolicy> mPolicies;
+
+    private final CachePolicy.ReferenceTier mReferenceTier;
+
+    /**
+     * 引用层中被GC回收的引用,没有开启引用层时为null
+     */
+    private final ReferenceQueue<Model> mReferenceQueue;
+
+    /**
+     * 查询了还没有创建EntityTable的表的次数
+     */
+    private final Counter mUntrackedMisses = new Counter();
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param capacity      SHARED表共享的容量
+     * @param policies      每张表的缓存方式
+     * @param referenceTier 被淘汰实体的引用方式
+     */
+    EntityCache(int capacity, Map<Class<? extends Model>, CachePolicy> policies,
+            CachePolicy.ReferenceTier referenceTier) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+
+        mSharedDomain = new Domain(capacity);
+        mPolicies = new HashMap<Class<? extends Model>, CachePolicy>(policies);
+        mReferenceTier = referenceTier;
+        mReferenceQueue = referenceTier != CachePolicy.ReferenceTier.NONE ? new ReferenceQueue<Model>() : null;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    Model get(Class<? extends Model> type, long id) {
+        final EntityTable table = mTables.get(type);
+        if (table == null) {
+            mUntrackedMisses.increment();
+            return null;
+        }
+
+        final Entry entry = table.mEntries.get(id);
+        if (entry == null) {
+            final Model model = table.mReferences != null ? getReferenced(type, table, id) : null;
+            if (model == null) {
+                table.mMisses.increment();
+            }
+            return model;
+        }
+
+        if (table.mTtlNanos > 0 && System.nanoTime() - entry.mCreated > table.mTtlNanos) {
+            expire(table, entry);
+            table.mMisses.increment();
+            return null;
+        }
+
+        // 已经标记过时不再写,避免多个线程反复写同一个缓存行
+        if (!entry.mReferenced) {
+            entry.mReferenced = true;
+        }
+        table.mHits.increment();
+        return entry.mModel;
+    }
+
+    void put(Class<? extends Model> type, long id, Model model) {
+        final EntityTable table = getTable(type);
+        if (table.mDomain == null) {
+            return;
+        }
+
+        if (table.mReferences != null) {
+            drainReferenceQueue();
+            table.mReferences.remove(id);
+        }
+
+        table.mPuts.increment();
+        final long now = table.mTtlNanos > 0 ? System.nanoTime() : 0;
+        final Entry entry = new Entry(table, id, model, now);
+        if (table.mEntries.put(entry) == null) {
+            table.mDomain.mSize.incrementAndGet();
+        }
+        table.mDomain.add(entry);
+
+        if (table.mTtlNanos > 0) {
+            purgeExpired(table, now);
+        }
+    }
+
+    void remove(Class<? extends Model> type, long id) {
+        final EntityTable table = mTables.get(type);
+        if (table == null) {
+            return;
+        }
+
+        if (table.mEntries.remove(id)) {
+            table.mDomain.mSize.decrementAndGet();
+        }
+        if (table.mReferences != null) {
+            table.mReferences.remove(id);
+        }
+    }
+
+    /**
+     * 移除type表的所有实体
+     */
+    void removeAll(Class<? extends Model> type) {
+        final EntityTable table = mTables.get(type);
+        if (table != null) {
+            clear(table);
+        }
+    }
+
+    void clear() {
+        for (EntityTable table : mTables.values()) {
+            clear(table);
+        }
+        for (Domain domain : getDomains()) {
+            domain.clearQueue();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Domain domain : getDomains()) {
+            size += domain.mSize.get();
+        }
+        return size;
+    }
+
+    /**
+     * 读取每张表的计数器和实体个数,生成统计快照
+     */
+    CacheStats getStats() {
+        final List<CacheStats.TableStats> tables = new ArrayList<CacheStats.TableStats>();
+        for (EntityTable table : mTables.values()) {
+            tables.add(new CacheStats.TableStats(table.mType, table.mHits.get(), table.mReferenceHits.get(),
+                    table.mMisses.get(), table.mPuts.get(), table.mEvictions.get(), table.mExpirations.get(),
+                    table.mEntries.size(), table.mReferences != null ? table.mReferences.size() : 0,
+                    table.mEstimatedEntitySize));
+        }
+        return new CacheStats(tables, mUntrackedMisses.get());
+    }
+
+    /**
+     * 清零所有计数器,不影响缓存的实体
+     */
+    void resetStats() {
+        mUntrackedMisses.reset();
+        for (EntityTable table : mTables.values()) {
+            table.mHits.reset();
+            table.mReferenceHits.reset();
+            table.mMisses.reset();
+            table.mPuts.reset();
+            table.mEvictions.reset();
+            table.mExpirations.reset();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 在引用层中查找实体,仍然存活时放回第一级
+     */
+    private Model getReferenced(Class<? extends Model> type, EntityTable table, long id) {
+        final TierReference reference = table.mReferences.get(id);
+        if (reference == null) {
+            return null;
+        }
+
+        final Model model = reference.get();
+        if (model == null) {
+            table.mReferences.remove(reference);
+            return null;
+        }
+
+        table.mReferenceHits.increment();
+        put(type, id, model);
+        return model;
+    }
+
+    /**
+     * 移除过期的entry.entry已经被移除或替换时不做任何事
+     */
+    private void expire(EntityTable table, Entry entry) {
+        if (table.mEntries.remove(entry)) {
+            table.mDomain.mSize.decrementAndGet();
+            table.mExpirations.increment();
+        }
+    }
+
+    /**
+     * 距离上一次清理超过一个过期时间时,移除table中所有过期的实体.
+     * 同一时间只有一个线程执行清理,其他线程的put()直接返回.
+     */
+    private void purgeExpired(EntityTable table, long now) {
+        final long lastPurge = table.mLastPurge.get();
+        if (now - lastPurge < table.mTtlNanos || !table.mLastPurge.compareAndSet(lastPurge, now)) {
+            return;
+        }
+
+        for (Entry entry : table.mEntries.values()) {
+            if (now - entry.mCreated > table.mTtlNanos) {
+                expire(table, entry);
+            }
+        }
+    }
+
+    /**
+     * 移除已经被GC回收的引用
+     */
+    private void drainReferenceQueue() {
+        Object reference;
+        while ((reference = mReferenceQueue.poll()) != null) {
+            final TierReference tierReference = (TierReference) reference;
+            tierReference.getTable().mReferences.remove(tierReference);
+        }
+    }
+
+    private EntityTable getTable(Class<? extends Model> type) {
+        EntityTable table = mTables.get(type);
+        if (table == null) {
+            final EntityTable created = createTable(type);
+            table = mTables.putIfAbsent(type, created);
+            if (table == null) {
+                table = created;
+            }
+        }
+        return table;
+    }
+
+    private EntityTable createTable(Class<? extends Model> type) {
+        CachePolicy policy = mPolicies.get(type);
+        if (policy == null) {
+            policy = mDefaultPolicy;
+        }
+
+        final Domain domain;
+        switch (policy.getMode()) {
+            case SEPARATE:
+                domain = new Domain(policy.getCapacity());
+                break;
+            case PINNED:
+                domain = new Domain(0);
+                break;
+            case DISABLED:
+                domain = null;
+                break;
+            default:
+                domain = mSharedDomain;
+                break;
+        }
+
+        // 只有会淘汰实体的表需要引用层
+        final boolean evicting = domain != null && domain.mCapacity > 0;
+        return new EntityTable(type, domain, policy.getTtlMillis() * 1000000L,
+                evicting ? mReferenceTier : CachePolicy.ReferenceTier.NONE, mReferenceQueue);
+    }
+
+    private void clear(EntityTable table) {
+        final int count = table.mEntries.clear();
+        if (table.mDomain != null) {
+            table.mDomain.mSize.addAndGet(-count);
+        }
+        if (table.mReferences != null) {
+            table.mReferences.clear();
+        }
+    }
+
+    private Set<Domain> getDomains() {
+        final Set<Domain> domains = new HashSet<Domain>();
+        for (EntityTable table : mTables.values()) {
+            if (table.mDomain != null) {
+                domains.add(table.mDomain);
+            }
+        }
+        return domains;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // INNER CLASSES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    static final class Entry implements Keyed {
+        final EntityTable mTable;
+        final long mId;
+        final Model mModel;
+
+        /**
+         * 放入缓存时的System.nanoTime(),表没有设置过期时间时为0
+         */
+        final long mCreated;
+
+        /**
+         * 放入队列之后是否被get()访问过
+         */
+        volatile boolean mReferenced;
+
+        Entry(EntityTable table, long id, Model model, long created) {
+            mTable = table;
+            mId = id;
+            mModel = model;
+            mCreated = created;
+        }
+
+        @Override
+        public long getKey() {
+            return mId;
+        }
+    }
+
+    /**
+     * 一个淘汰域:共享一个容量和淘汰队列的一组表.容量为0时不淘汰,也不记录淘汰队列.
+     */
+    static final class Domain {
+        private final int mCapacity;
+
+        /**
+         * 域中所有表的实体个数
+         */
+        final AtomicInteger mSize = new AtomicInteger();
+
+        /**
+         * 淘汰顺序.remove()不从队列中删除,被移除或替换的Entry在出队时丢弃
+         */
+        private final ConcurrentLinkedQueue<Entry> mQueue = new ConcurrentLinkedQueue<Entry>();
+        private final AtomicInteger mQueueSize = new AtomicInteger();
+
+        Domain(int capacity) {
+            mCapacity = capacity;
+        }
+
+        void add(Entry entry) {
+            if (mCapacity == 0) {
+                return;
+            }
+
+            mQueue.offer(entry);
+            mQueueSize.incrementAndGet();
+            evict();
+        }
+
+        void clearQueue() {
+            mQueue.clear();
+            mQueueSize.set(0);
+        }
+
+        /**
+         * 超过容量时淘汰实体.队列中失效的Entry超过容量时也会顺便清理,避免队列无限增长.
+         */
+        private void evict() {
+            while (mSize.get() > mCapacity || mQueueSize.get() > 2 * mCapacity) {
+                final Entry entry = mQueue.poll();
+                if (entry == null) {
+                    return;
+                }
+                mQueueSize.decrementAndGet();
+
+                if (entry.mTable.mEntries.get(entry.mId) != entry) {
+                    // 已经被移除或替换
+                    continue;
+                }
+
+                if (entry.mReferenced && mSize.get() <= 2 * mCapacity) {
+                    entry.mReferenced = false;
+                    mQueue.offer(entry);
+                    mQueueSize.incrementAndGet();
+                } else if (mSize.get() > mCapacity) {
+                    if (entry.mTable.evict(entry)) {
+                        mSize.decrementAndGet();
+                    }
+                } else {
+                    mQueue.offer(entry);
+                    mQueueSize.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一张表的缓存:第一级是强引用的实体,属于mDomain;开启了引用层时,第二级是被淘汰但可能仍被使用的实体的弱/软引用
+     */
+    static final class EntityTable {
+        final Class<? extends Model> mType;
+        /**
+         * 所属的淘汰域,不缓存时为null
+         */
+        final Domain mDomain;
+
+        /**
+         * 实体的过期时间,单位纳秒,0表示不过期
+         */
+        final long mTtlNanos;
+
+        /**
+         * 上一次清理过期实体的System.nanoTime(),见purgeExpired()
+         */
+        final AtomicLong mLastPurge = new AtomicLong(System.nanoTime());
+
+        final LongTable<Entry> mEntries = new LongTable<Entry>();
+
+        /**
+         * 被淘汰实体的引用,没有开启引用层时为null
+         */
+        final LongTable<TierReference> mReferences;
+
+        private final CachePolicy.ReferenceTier mReferenceTier;
+        private final ReferenceQueue<Model> mReferenceQueue;
+
+        /**
+         * 统计计数器,见CacheStats.TableStats
+         */
+        final Counter mHits = new Counter();
+        final Counter mReferenceHits = new Counter();
+        final Counter mMisses = new Counter();
+        final Counter mPuts = new Counter();
+        final Counter mEvictions = new Counter();
+        final Counter mExpirations = new Counter();
+
+        /**
+         * 一个实体连同缓存开销的估算字节数,见estimateEntitySize()
+         */
+        final int mEstimatedEntitySize;
+
+        EntityTable(Class<? extends Model> type, Domain domain, long ttlNanos,
+                CachePolicy.ReferenceTier referenceTier, ReferenceQueue<Model> referenceQueue) {
+            mType = type;
+            mEstimatedEntitySize = estimateEntitySize(Cache.getTableInfo(type));
+            mDomain = domain;
+            mTtlNanos = ttlNanos;
+            mReferenceTier = referenceTier;
+            mReferenceQueue = referenceQueue;
+            mReferences = referenceTier != CachePolicy.ReferenceTier.NONE ? new LongTable<TierReference>() : null;
+        }
+
+        /**
+         * 从第一级淘汰entry,开启了引用层时保存它的引用.entry已经被移除或替换时返回false.
+         */
+        boolean evict(Entry entry) {
+            if (!mEntries.remove(entry)) {
+                return false;
+            }
+            mEvictions.increment();
+
+            if (mReferences != null) {
+                if (mReferenceTier == CachePolicy.ReferenceTier.SOFT) {
+                    mReferences.put(new SoftEntityReference(this, entry.mId, entry.mModel, mReferenceQueue));
+                } else {
+                    mReferences.put(new WeakEntityReference(this, entry.mId, entry.mModel, mReferenceQueue));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 按列类型估算一个实体占用的字节数:对象头和Model自身的字段,每一列的值,
+         * 以及Entry、LongTable的槽和淘汰队列节点.字符串和BLOB按一个较短的值估算.
+         */
+        private static int estimateEntitySize(TableInfo tableInfo) {
+            int size = ENTITY_OVERHEAD + CACHE_OVERHEAD;
+            if (tableInfo == null) {
+                return size;
+            }
+
+            for (ColumnInfo column : tableInfo.getColumns()) {
+                final boolean primitive = column.getField().getType().isPrimitive();
+                switch (column.getValueType()) {
+                    case BYTE:
+                    case BOOLEAN:
+                        size += primitive ? 1 : BOXED_SIZE;
+                        break;
+                    case SHORT:
+                    case CHARACTER:
+                        size += primitive ? 2 : BOXED_SIZE;
+                        break;
+                    case INTEGER:
+                    case FLOAT:
+                        size += primitive ? 4 : BOXED_SIZE;
+                        break;
+                    case LONG:
+                    case DOUBLE:
+                        size += primitive ? 8 : BOXED_SIZE + 4;
+                        break;
+                    case STRING:
+                    case BLOB:
+                        size += REFERENCE_SIZE + VARIABLE_SIZE;
+                        break;
+                    default:
+                        // 关联的Model、枚举和序列化后的值只计算引用本身及一个小对象
+                        size += REFERENCE_SIZE + BOXED_SIZE;
+                        break;
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * 分段计数器.每个线程按线程id累加到不同的槽中,读取时求和,
+     * 热点表的每次命中都计数时多个线程不会争用同一个缓存行.
+     */
+    static final class Counter {
+        private static final int STRIPES = 8;
+
+        /**
+         * 相邻的槽间隔PADDING个long,避免落在同一个缓存行
+         */
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+        void increment() {
+            final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            mCells.incrementAndGet(stripe * PADDING);
+        }
+
+        long get() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += mCells.get(i * PADDING);
+            }
+            return sum;
+        }
+
+        void reset() {
+            for (int i = 0; i < STRIPES; i++) {
+                mCells.set(i * PADDING, 0);
+            }
+        }
+    }
+
+    /**
+     * LongTable中的元素,以long主键为key
+     */
+    interface Keyed {
+        long getKey();
+    }
+
+    /**
+     * 引用层中被淘汰实体的引用,被GC回收后通过ReferenceQueue从所属的表中移除
+     */
+    interface TierReference extends Keyed {
+        Model get();
+
+        EntityTable getTable();
+    }
+
+    static final class WeakEntityReference extends WeakReference<Model> implements TierReference {
+        private final EntityTable mTable;
+        private final long mId;
+
+        WeakEntityReference(EntityTable table, long id, Model model, ReferenceQueue<Model> queue) {
+            super(model, queue);
+            mTable = table;
+            mId = id;
+        }
+
+        @Override
+        public long getKey() {
+            return mId;
+        }
+
+        @Override
+        public EntityTable getTable() {
+            return mTable;
+        }
+    }
+
+    static final class SoftEntityReference extends SoftReference<Model> implements TierReference {
+        private final EntityTable mTable;
+        private final long mId;
+
+        SoftEntityReference(EntityTable table, long id, Model model, ReferenceQueue<Model> queue) {
+            super(model, queue);
+            mTable = table;
+            mId = id;
+        }
+
+        @Override
+        public long getKey() {
+            return mId;
+        }
+
+        @Override
+        public EntityTable getTable() {
+            return mTable;
+        }
+    }
+
+    /**
+     * 以long主键为key的开放寻址(线性探测)哈希表.
+     *
+     * 写入在synchronized中进行,读取不加锁:元素的key是final的,读到元素引用时它的内容一定完整;
+     * 扩容时构造新数组后再通过volatile的mSlots发布,读取旧数组的线程仍能看到一致的数据.
+     * 删除时留下TOMBSTONE,不移动其他元素,保证并发读取时不会漏掉存在的元素.
+     * 装载率(包括TOMBSTONE)不超过1/2,所以探测总能遇到空位结束.
+     */
+    static final class LongTable<E extends Keyed> {
+        private static final int MIN_CAPACITY = 16;
+        private static final Object TOMBSTONE = new Object();
+
+        private volatile Object[] mSlots = new Object[MIN_CAPACITY];
+
+        /**
+         * 元素个数,以及元素和TOMBSTONE占用的位置个数
+         */
+        private int mCount;
+        private int mUsed;
+
+        @SuppressWarnings("unchecked")
+        E get(long key) {
+            final Object[] slots = mSlots;
+            final int mask = slots.length - 1;
+            int index = hash(key) & mask;
+            while (true) {
+                final Object slot = slots[index];
+                if (slot == null) {
+                    return null;
+                }
+                if (slot != TOMBSTONE && ((E) slot).getKey() == key) {
+                    return (E) slot;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        /**
+         * 放入element,替换同一key的元素,返回被替换的元素
+         */
+        @SuppressWarnings("unchecked")
+        synchronized E put(E element) {
+            if ((mUsed + 1) * 2 > mSlots.length) {
+                resize();
+            }
+
+            final long key = element.getKey();
+            final Object[] slots = mSlots;
+            final int mask = slots.length - 1;
+            int index = hash(key) & mask;
+            int free = -1;
+            while (true) {
+                final Object current = slots[index];
+                if (current == null) {
+                    break;
+                }
+                if (current == TOMBSTONE) {
+                    if (free < 0) {
+                        free = index;
+                    }
+                } else if (((E) current).getKey() == key) {
+                    slots[index] = element;
+                    return (E) current;
+                }
+                index = (index + 1) & mask;
+            }
+
+            if (free >= 0) {
+                slots[free] = element;
+            } else {
+                slots[index] = element;
+                mUsed++;
+            }
+            mCount++;
+            return null;
+        }
+
+        synchronized boolean remove(long key) {
+            final int index = indexOf(key);
+            if (index < 0) {
+                return false;
+            }
+
+            mSlots[index] = TOMBSTONE;
+            mCount--;
+            return true;
+        }
+
+        /**
+         * 只有element仍然是这个key当前的元素时才移除
+         */
+        synchronized boolean remove(E element) {
+            final int index = indexOf(element.getKey());
+            if (index < 0 || mSlots[index] != element) {
+                return false;
+            }
+
+            mSlots[index] = TOMBSTONE;
+            mCount--;
+            return true;
+        }
+
+        /**
+         * 移除所有元素,返回移除的个数
+         */
+        synchronized int clear() {
+            final int count = mCount;
+            mSlots = new Object[MIN_CAPACITY];
+            mCount = 0;
+            mUsed = 0;
+            return count;
+        }
+
+        synchronized int size() {
+            return mCount;
+        }
+
+        /**
+         * 所有元素的拷贝
+         */
+        @SuppressWarnings("unchecked")
+        synchronized List<E> values() {
+            final List<E> values = new ArrayList<E>(mCount);
+            for (Object slot : mSlots) {
+                if (slot != null && slot != TOMBSTONE) {
+                    values.add((E) slot);
+                }
+            }
+            return values;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int indexOf(long key) {
+            final Object[] slots = mSlots;
+            final int mask = slots.length - 1;
+            int index = hash(key) & mask;
+            while (true) {
+                final Object slot = slots[index];
+                if (slot == null) {
+                    return -1;
+                }
+                if (slot != TOMBSTONE && ((E) slot).getKey() == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        /**
+         * 按元素个数重新分配数组,同时丢弃所有TOMBSTONE
+         */
+        @SuppressWarnings("unchecked")
+        private void resize() {
+            int capacity = MIN_CAPACITY;
+            while (capacity < (mCount + 1) * 4) {
+                capacity <<= 1;
+            }
+
+            final Object[] slots = new Object[capacity];
+            final int mask = capacity - 1;
+            for (Object slot : mSlots) {
+                if (slot != null && slot != TOMBSTONE) {
+                    int index = hash(((E) slot).getKey()) & mask;
+                    while (slots[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    slots[index] = slot;
+                }
+            }
+
+            mSlots = slots;
+            mUsed = mCount;
+        }
+
+        private static int hash(long key) {
+            final int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.activeandroid;
+
+import com.activeandroid.binder.BinderUtils;
+import com.activeandroid.util.SQLiteUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 延迟加载的外键引用.
+ *
+ * Model中声明为Lazy&lt;T&gt;的Column和T类型的Column在数据库中完全相同,都是T表的外键.
+ * 区别在于loadFromCursor()只读取外键id,不加载T本身,也不会递归加载T的外键.
+ * 第一次调用get()时才从缓存或数据库中加载,之后返回同一个对象.
+ *
+ * 对一批引用逐个调用get()会产生N次查询,这种情况应先调用resolveAll()批量加载.
+ * Lazy不是线程安全的,并发调用get()可能各自查询一次,但返回的都是同一行数据.
+ */
+public final class Lazy<T extends Model> {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final Class<T> mType;
+
+    /**
+     * 引用的主键,通过of(T)创建时为null,此时使用mModel的主键
+     */
+    private final Long mId;
+
+    private T mModel;
+    private boolean mLoaded;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private Lazy(Class<T> type, Long id, T model, boolean loaded) {
+        mType = type;
+        mId = id;
+        mModel = model;
+        mLoaded = loaded;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 引用一个已经在内存中的Model,保存时写入它当前的主键
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Model> Lazy<T> of(T model) {
+        return new Lazy<T>((Class<T>) model.getClass(), null, model, true);
+    }
+
+    /**
+     * 按主键引用type表中的一行,第一次get()时才加载
+     */
+    public static <T extends Model> Lazy<T> of(Class<T> type, long id) {
+        return new Lazy<T>(type, id, null, false);
+    }
+
+    public Class<T> getType() {
+        return mType;
+    }
+
+    /**
+     * 引用的主键,不需要加载引用的Model.引用的Model还没有保存时返回null.
+     */
+    public Long getId() {
+        if (mId == null) {
+            return mModel != null ? mModel.getId() : null;
+        }
+        return mId;
+    }
+
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * 获取引用的Model,第一次调用时优先从缓存中查找,其次查询数据库.引用的行不存在时返回null.
+     */
+    public T get() {
+        if (!mLoaded) {
+            mModel = BinderUtils.loadEntity(mType, mId);
+            mLoaded = true;
+        }
+        return mModel;
+    }
+
+    /**
+     * 批量加载一组引用:已经在缓存中的直接使用,其余的每张表按主键用IN查询一次加载.
+     * 之后对这些引用调用get()不再查询数据库.
+     */
+    @SuppressWarnings("unchecked")
+    public static void resolveAll(Collection<? extends Lazy<?>> references) {
+        final Map<Class<? extends Model>, Set<Long>> missing = new HashMap<Class<? extends Model>, Set<Long>>();
+        for (Lazy<?> reference : references) {
+            if (reference == null || reference.mLoaded) {
+                continue;
+            }
+
+            final Model cached = Cache.getEntity(reference.mType, reference.mId);
+            if (cached != null) {
+                ((Lazy<Model>) reference).setModel(cached);
+                continue;
+            }
+
+            Set<Long> ids = missing.get(reference.mType);
+            if (ids == null) {
+                ids = new HashSet<Long>();
+                missing.put(reference.mType, ids);
+            }
+            ids.add(reference.mId);
+        }
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        final Map<Class<? extends Model>, Map<Long, ? extends Model>> loaded =
+                new HashMap<Class<? extends Model>, Map<Long, ? extends Model>>();
+        for (Map.Entry<Class<? extends Model>, Set<Long>> entry : missing.entrySet()) {
+            loaded.put(entry.getKey(), SQLiteUtils.loadEntities(entry.getKey(), entry.getValue()));
+        }
+
+        for (Lazy<?> reference : references) {
+            if (reference == null || reference.mLoaded) {
+                continue;
+            }
+
+            final Map<Long, ? extends Model> entities = loaded.get(reference.mType);
+            ((Lazy<Model>) reference).setModel(entities.get(reference.mId));
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private void setModel(T model) {
+        mModel = model;
+        mLoaded = true;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // OVERRIDEN METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return "Lazy<" + mType.getSimpleName() + ">@" + getId();
+    }
+}
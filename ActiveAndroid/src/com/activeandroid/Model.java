@@ -16,21 +16,22 @@ package com.activeandroid;
  * limitations under the License.
  */
 
-import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
-import com.activeandroid.content.ContentProvider;
-import com.activeandroid.query.Delete;
+import com.activeandroid.binder.ModelBinder;
 import com.activeandroid.query.Select;
-import com.activeandroid.serializer.TypeSerializer;
 import com.activeandroid.util.Log;
-import com.activeandroid.util.ReflectionUtils;
+import com.activeandroid.util.SQLiteUtils;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 @SuppressWarnings("unchecked")
 public abstract class Model {
@@ -49,6 +50,13 @@ public abstract class Model {
     private final TableInfo mTableInfo;
     private final String idName;
 
+    /**
+     * 开启变更跟踪时,上一次加载或保存后每一列的值,下标和TableInfo.getColumns()一致,主键位置为null.
+     * 没有开启变更跟踪,或者还没有写入数据库时为null.
+     * 在ActiveAndroid.beginTransaction()开启的事务中更新的快照,事务回滚时被作废.
+     */
+    private Object[] mSnapshot;
+
     /**
      * 构造函数
      * 获取当前自定义Model对应的TableInfo,并获取主键的名称
@@ -67,105 +75,191 @@ public abstract class Model {
     }
 
     public final void delete() {
-        Cache.openDatabase().delete(mTableInfo.getTableName(), idName + "=?", new String[]{getId().toString()});
+        final String sql = mTableInfo.getDeleteSql();
+        final SQLiteStatement statement = Cache.acquireStatement(sql);
+        try {
+            statement.bindLong(1, mId);
+            statement.execute();
+        } finally {
+            Cache.releaseStatement(sql, statement);
+        }
         Cache.removeEntity(this);
 
-        Cache.getContext().getContentResolver()
-                .notifyChange(ContentProvider.createUri(mTableInfo.getType(), mId), null);
+        Cache.getNotificationDispatcher().notifyChange(mTableInfo.getType(), mId);
     }
 
     /**
-     * 插入或更新操作
+     * 插入或更新操作.
+     * INSERT和UPDATE语句从Cache中借出已编译的SQLiteStatement,同一张表反复保存时不再重新编译SQL.
+     * 表开启了变更跟踪时,更新只写入修改过的列,没有任何修改时直接返回,不写库也不通知ContentProvider.
      */
     public final Long save() {
-        // 获取SQLite数据库写权限句柄
-        final SQLiteDatabase db = Cache.openDatabase();
-        // 创建ContentValues插入对象
-        final ContentValues values = new ContentValues();
-
-        // 遍历每一列
-        for (Field field : mTableInfo.getFields()) {
-            final String fieldName = mTableInfo.getColumnName(field);
-            Class<?> fieldType = field.getType();
-
-            field.setAccessible(true);
-
+        if (mId == null) {
+            // 当前用户Id为null,则进行插入操作
+            final String sql = mTableInfo.getInsertSql();
+            final SQLiteStatement statement = Cache.acquireStatement(sql);
             try {
-                // 通过反射获取每一列的值
-                Object value = field.get(this);
-
-                if (value != null) {
-                    final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
-                    if (typeSerializer != null) {
-                        // serialize data
-                        value = typeSerializer.serialize(value);
-                        // set new object type
-                        if (value != null) {
-                            fieldType = value.getClass();
-                            // check that the serializer returned what it promised
-                            if (!fieldType.equals(typeSerializer.getSerializedType())) {
-                                Log.w(String.format("TypeSerializer returned wrong type: expected a %s but got a %s",
-                                        typeSerializer.getSerializedType(), fieldType));
-                            }
-                        }
-                    }
-                }
-
-                // 根据File的type将Object value转成相应类型的值,存放在ContentValues中
-                if (value == null) {
-                    values.putNull(fieldName);
-                } else if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
-                    values.put(fieldName, (Byte) value);
-                } else if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
-                    values.put(fieldName, (Short) value);
-                } else if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
-                    values.put(fieldName, (Integer) value);
-                } else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
-                    values.put(fieldName, (Long) value);
-                } else if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
-                    values.put(fieldName, (Float) value);
-                } else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
-                    values.put(fieldName, (Double) value);
-                } else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
-                    values.put(fieldName, (Boolean) value);
-                } else if (fieldType.equals(Character.class) || fieldType.equals(char.class)) {
-                    values.put(fieldName, value.toString());
-                } else if (fieldType.equals(String.class)) {
-                    values.put(fieldName, value.toString());
-                } else if (fieldType.equals(Byte[].class) || fieldType.equals(byte[].class)) {
-                    values.put(fieldName, (byte[]) value);
-                } else if (ReflectionUtils.isModel(fieldType)) {
-                    values.put(fieldName, ((Model) value).getId());
-                } else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
-                    values.put(fieldName, ((Enum<?>) value).name());
+                bindStatement(statement);
+                mId = statement.executeInsert();
+                takeSnapshot();
+            } catch (SQLException e) {
+                // 和SQLiteDatabase.insert()一样,插入失败时记录日志并返回-1
+                Log.e("Error inserting " + mTableInfo.getTableName(), e);
+                mId = -1L;
+            } finally {
+                Cache.releaseStatement(sql, statement);
+            }
+        } else if (mSnapshot != null) {
+            // 开启了变更跟踪,只更新修改过的列
+            if (!updateChangedColumns()) {
+                return mId;
+            }
+        } else {
+            // 当前用户Id不为null,则进入更新操作
+            final String sql = mTableInfo.getUpdateSql();
+            if (sql != null) {
+                final SQLiteStatement statement = Cache.acquireStatement(sql);
+                try {
+                    bindStatement(statement);
+                    statement.bindLong(mTableInfo.getBindColumnNames().length + 1, mId);
+                    statement.execute();
+                } finally {
+                    Cache.releaseStatement(sql, statement);
                 }
-            } catch (IllegalArgumentException e) {
-                Log.e(e.getClass().getName(), e);
-            } catch (IllegalAccessException e) {
-                Log.e(e.getClass().getName(), e);
             }
+            takeSnapshot();
         }
 
+        // 通知ContentProvider
+        Cache.getNotificationDispatcher().notifyChange(mTableInfo.getType(), mId);
+        return mId;
+    }
 
-        if (mId == null) {
-            // 当前用户Id为null,则进行插入操作
-            mId = db.insert(mTableInfo.getTableName(), null, values);
-        } else {
-            // 当前用户Id不为null,则进入更新操作
-            db.update(mTableInfo.getTableName(), values, idName + "=" + mId, null);
+    /**
+     * 按唯一键插入或更新.
+     * 唯一键由Column注解决定:第一个unique列,没有时为第一个uniqueGroups组合.
+     * 唯一键已存在时更新那一行,并把mId设置为那一行的主键;不存在时插入新行.不需要先查询一次.
+     *
+     * @return 插入或更新的行的主键
+     * @throws IllegalStateException 表没有unique列或uniqueGroups
+     */
+    public final Long upsert() {
+        checkUniqueKey(mTableInfo);
+
+        final SQLiteDatabase db = Cache.openDatabase();
+        db.beginTransaction();
+        try {
+            mId = upsertRow();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
 
-        // 通知ContentProvider
-        Cache.getContext().getContentResolver()
-                .notifyChange(ContentProvider.createUri(mTableInfo.getType(), mId), null);
+        // 以这个实例替换Cache中同一行的旧实例
+        Cache.addEntity(this);
+        takeSnapshot();
+
+        Cache.getNotificationDispatcher().notifyChange(mTableInfo.getType(), mId);
         return mId;
     }
 
+    /**
+     * 异步插入或更新,在WriteQueue的写线程上和同一批的其他写操作一起提交.
+     * Future完成之前不要修改这个Model.插入失败时Future以SQLException结束;所在事务回滚时,插入回填的id会被重置为null.
+     */
+    public final Future<Long> saveAsync() {
+        return saveAsync(null);
+    }
+
+    public final Future<Long> saveAsync(WriteQueue.Callback<Long> callback) {
+        final boolean[] inserted = new boolean[1];
+        final Callable<Long> save = new Callable<Long>() {
+            @Override
+            public Long call() {
+                inserted[0] = mId == null;
+                final Long id = save();
+                // save()插入失败时只记录日志并返回-1,这里以异常结束,Future不会成功返回-1
+                if (inserted[0] && id == -1L) {
+                    throw new SQLException("Error inserting " + mTableInfo.getTableName());
+                }
+                return id;
+            }
+        };
+
+        return Cache.getWriteQueue().enqueue(new WriteQueue.Operation<Long>(save, callback) {
+            @Override
+            void onRollback() {
+                if (inserted[0]) {
+                    mId = null;
+                    mSnapshot = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * 异步删除,在WriteQueue的写线程上和同一批的其他写操作一起提交
+     */
+    public final Future<Void> deleteAsync() {
+        return deleteAsync(null);
+    }
+
+    public final Future<Void> deleteAsync(WriteQueue.Callback<Void> callback) {
+        return Cache.getWriteQueue().submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                delete();
+                return null;
+            }
+        }, callback);
+    }
+
     // Convenience methods
 
     public static void delete(Class<? extends Model> type, long id) {
-        TableInfo tableInfo = Cache.getTableInfo(type);
-        new Delete().from(type).where(tableInfo.getIdName() + "=?", id).execute();
+        BatchWriter.deleteAll(type, new long[]{id});
+    }
+
+    /**
+     * 按主键批量删除,不加载Model.所有删除在同一个事务中提交,只发送一次通知.
+     *
+     * @return 删除的行数
+     */
+    public static int deleteAll(Class<? extends Model> type, long[] ids) {
+        return BatchWriter.deleteAll(type, ids);
+    }
+
+    /**
+     * 批量插入或更新,所有Model在同一个事务中写入,每张表只发送一次ContentProvider通知
+     */
+    public static void saveAll(Collection<? extends Model> models) {
+        BatchWriter.saveAll(models);
+    }
+
+    /**
+     * 批量按唯一键插入或更新,所有Model在同一个事务中写入
+     *
+     * @return 每个Model对应行的主键,顺序和models一致
+     */
+    public static List<Long> upsertAll(Collection<? extends Model> models) {
+        return BatchWriter.upsertAll(models);
+    }
+
+    /**
+     * 批量获取一组父实体的子实体,每500个父实体只查询一次,返回父实体主键到子实体列表的映射
+     */
+    public static <T extends Model> Map<Long, List<T>> getMany(Collection<? extends Model> parents, Class<T> type,
+            String foreignKey) {
+        return SQLiteUtils.loadChildren(parents, type, foreignKey, false);
+    }
+
+    /**
+     * 和getMany(parents, type, foreignKey)相同.cacheResult为true时缓存每个父实体的子实体列表,
+     * type表修改之前,这些父实体调用getMany(type, foreignKey)不再查询数据库.
+     */
+    public static <T extends Model> Map<Long, List<T>> getMany(Collection<? extends Model> parents, Class<T> type,
+            String foreignKey, boolean cacheResult) {
+        return SQLiteUtils.loadChildren(parents, type, foreignKey, cacheResult);
     }
 
     public static <T extends Model> T load(Class<T> type, long id) {
@@ -179,91 +273,186 @@ public abstract class Model {
      * 从cursor构造Model实体类
      */
     public final void loadFromCursor(Cursor cursor) {
-        /**
-         * Obtain the columns ordered to fix issue #106 (https://github.com/pardom/ActiveAndroid/issues/106)
-         * when the cursor have multiple columns with same name obtained from join tables.
-         */
-        List<String> columnsOrdered = new ArrayList<String>(Arrays.asList(cursor.getColumnNames()));
-        for (Field field : mTableInfo.getFields()) {
-            final String fieldName = mTableInfo.getColumnName(field);
-            Class<?> fieldType = field.getType();
-            final int columnIndex = columnsOrdered.indexOf(fieldName);
+        loadFromCursor(cursor, mTableInfo.getColumnMapping(cursor.getColumnNames()));
+    }
 
-            if (columnIndex < 0) {
-                continue;
+    /**
+     * 使用预先计算好的列下标读取Cursor的当前行,mapping需要由这张表的TableInfo.getColumnMapping()获取.
+     * 读取多行时只需要获取一次mapping,每一行不再比较列名.
+     */
+    public final void loadFromCursor(Cursor cursor, ColumnMapping mapping) {
+        loadFromCursor(cursor, mapping, true);
+    }
+
+    /**
+     * 和loadFromCursor(cursor, mapping)相同,addToCache为false时不把读取到的实体放入Cache,用于大表的遍历
+     */
+    public final void loadFromCursor(Cursor cursor, ColumnMapping mapping, boolean addToCache) {
+        final ModelBinder<Model> modelBinder = mTableInfo.getModelBinder();
+        if (modelBinder != null) {
+            // 主键mId是私有成员,生成的ModelBinder无法访问,由Model自己读取
+            final int idIndex = mapping.getIdIndex();
+            if (idIndex >= 0 && !cursor.isNull(idIndex)) {
+                mId = cursor.getLong(idIndex);
             }
+            modelBinder.loadFromCursor(this, cursor, mapping.getColumnIndexes());
+        } else {
+            loadFromCursorReflectively(cursor, mapping.getColumnIndexes());
+        }
 
-            field.setAccessible(true);
+        if (addToCache && mId != null) {
+            Cache.addEntity(this);
+        }
+
+        takeSnapshot();
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
 
+    final TableInfo getTableInfo() {
+        return mTableInfo;
+    }
+
+    final void setId(Long id) {
+        mId = id;
+    }
+
+    static void checkUniqueKey(TableInfo tableInfo) {
+        if (tableInfo.getUniqueKey().length == 0) {
+            throw new IllegalStateException("Table " + tableInfo.getTableName()
+                    + " has no unique column or unique group to upsert on.");
+        }
+    }
+
+    /**
+     * 先按唯一键UPDATE,没有更新到任何行时再INSERT,返回这一行的主键.调用方需要开启事务.
+     *
+     * Android自带的SQLite在API 30之前不支持INSERT ... ON CONFLICT DO UPDATE,
+     * 而INSERT OR REPLACE会先删除旧行,触发外键的ON DELETE动作,所以这里用两条已编译的语句实现.
+     */
+    final long upsertRow() {
+        final ColumnInfo[] uniqueKey = mTableInfo.getUniqueKey();
+        final int bindCount = mTableInfo.getBindColumnNames().length;
+
+        final String updateSql = mTableInfo.getUpsertUpdateSql();
+        final SQLiteStatement update = Cache.acquireStatement(updateSql);
+        final int updated;
+        try {
+            bindStatement(update);
+            bindUniqueKey(update, uniqueKey, bindCount + 1);
+            updated = SQLiteUtils.executeUpdateDelete(update);
+        } finally {
+            Cache.releaseStatement(updateSql, update);
+        }
+
+        if (updated == 0) {
+            final String insertSql = mTableInfo.getInsertSql();
+            final SQLiteStatement insert = Cache.acquireStatement(insertSql);
             try {
-                boolean columnIsNull = cursor.isNull(columnIndex);
-                TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
-                Object value = null;
+                bindStatement(insert);
+                return insert.executeInsert();
+            } finally {
+                Cache.releaseStatement(insertSql, insert);
+            }
+        }
 
-                if (typeSerializer != null) {
-                    fieldType = typeSerializer.getSerializedType();
-                }
+        final String querySql = mTableInfo.getUniqueKeyQuerySql();
+        final SQLiteStatement query = Cache.acquireStatement(querySql);
+        try {
+            bindUniqueKey(query, uniqueKey, 1);
+            return query.simpleQueryForLong();
+        } finally {
+            Cache.releaseStatement(querySql, query);
+        }
+    }
 
-                // TODO: Find a smarter way to do this? This if block is necessary because we
-                // can't know the type until runtime.
-                if (columnIsNull) {
-                    field = null;
-                } else if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
-                    value = cursor.getInt(columnIndex);
-                } else if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
-                    value = cursor.getInt(columnIndex);
-                } else if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
-                    value = cursor.getInt(columnIndex);
-                } else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
-                    value = cursor.getLong(columnIndex);
-                } else if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
-                    value = cursor.getFloat(columnIndex);
-                } else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
-                    value = cursor.getDouble(columnIndex);
-                } else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
-                    value = cursor.getInt(columnIndex) != 0;
-                } else if (fieldType.equals(Character.class) || fieldType.equals(char.class)) {
-                    value = cursor.getString(columnIndex).charAt(0);
-                } else if (fieldType.equals(String.class)) {
-                    value = cursor.getString(columnIndex);
-                } else if (fieldType.equals(Byte[].class) || fieldType.equals(byte[].class)) {
-                    value = cursor.getBlob(columnIndex);
-                } else if (ReflectionUtils.isModel(fieldType)) {
-                    final long entityId = cursor.getLong(columnIndex);
-                    final Class<? extends Model> entityType = (Class<? extends Model>) fieldType;
-
-                    Model entity = Cache.getEntity(entityType, entityId);
-                    if (entity == null) {
-                        entity = new Select().from(entityType).where(idName + "=?", entityId).executeSingle();
-                    }
-
-                    value = entity;
-                } else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
-                    @SuppressWarnings("rawtypes")
-                    final Class<? extends Enum> enumType = (Class<? extends Enum>) fieldType;
-                    value = Enum.valueOf(enumType, cursor.getString(columnIndex));
-                }
+    /**
+     * 开启变更跟踪时,判断上一次加载或保存后是否有列被修改.没有快照时总是返回true.
+     */
+    final boolean hasChanges() {
+        if (mSnapshot == null) {
+            return true;
+        }
 
-                // Use a deserializer if one is available
-                if (typeSerializer != null && !columnIsNull) {
-                    value = typeSerializer.deserialize(value);
-                }
+        final ColumnInfo[] columns = mTableInfo.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].isPrimaryKey()) {
+                continue;
+            }
 
-                // Set the field value
-                if (value != null) {
-                    field.set(this, value);
+            try {
+                if (!ColumnInfo.snapshotEquals(mSnapshot[i], columns[i].getSnapshotValue(this))) {
+                    return true;
                 }
-            } catch (IllegalArgumentException e) {
-                Log.e(e.getClass().getName(), e);
             } catch (IllegalAccessException e) {
                 Log.e(e.getClass().getName(), e);
-            } catch (SecurityException e) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 开启变更跟踪时,记录当前每一列的值,作为下一次save()比较的基准
+     */
+    final void takeSnapshot() {
+        if (!mTableInfo.isTrackingChanges() || mId == null) {
+            return;
+        }
+
+        final ColumnInfo[] columns = mTableInfo.getColumns();
+        final Object[] snapshot = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].isPrimaryKey()) {
+                continue;
+            }
+
+            try {
+                snapshot[i] = columns[i].getSnapshotValue(this);
+            } catch (IllegalAccessException e) {
                 Log.e(e.getClass().getName(), e);
+                // 无法读取时不记录快照,下一次save()回退为整行更新
+                mSnapshot = null;
+                return;
             }
         }
 
-        if (mId != null) {
-            Cache.addEntity(this);
+        publishSnapshot(snapshot);
+    }
+
+    /**
+     * 作废快照,下一次save()回退为整行更新.快照所在的事务回滚时由NotificationDispatcher调用.
+     */
+    final void discardSnapshot() {
+        mSnapshot = null;
+    }
+
+    /**
+     * 按照TableInfo.getBindColumnNames()的顺序,将除主键外的每一列绑定到编译好的SQLiteStatement
+     */
+    final void bindStatement(SQLiteStatement statement) {
+        final ModelBinder<Model> modelBinder = mTableInfo.getModelBinder();
+        if (modelBinder != null) {
+            modelBinder.bindStatement(this, statement);
+            return;
+        }
+
+        int index = 1;
+        for (ColumnInfo column : mTableInfo.getColumns()) {
+            if (column.isPrimaryKey()) {
+                continue;
+            }
+
+            try {
+                column.bindValue(this, statement, index++);
+            } catch (IllegalArgumentException e) {
+                Log.e(e.getClass().getName(), e);
+            } catch (IllegalAccessException e) {
+                Log.e(e.getClass().getName(), e);
+            }
         }
     }
 
@@ -272,9 +461,106 @@ public abstract class Model {
     //////////////////////////////////////////////////////////////////////////////////////
 
     protected final <T extends Model> List<T> getMany(Class<T> type, String foreignKey) {
+        // 通过From.include()或getMany(parents, type, foreignKey, true)加载时已经缓存了子实体列表,子表没有修改过时直接使用
+        final List<T> cached = Cache.getRelation(this, type, foreignKey);
+        if (cached != null) {
+            return cached;
+        }
+
         return new Select().from(type).where(Cache.getTableName(type) + "." + foreignKey + "=?", getId()).execute();
     }
 
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private void bindUniqueKey(SQLiteStatement statement, ColumnInfo[] uniqueKey, int startIndex) {
+        for (int i = 0; i < uniqueKey.length; i++) {
+            try {
+                uniqueKey[i].bindValue(this, statement, startIndex + i);
+            } catch (IllegalAccessException e) {
+                Log.e(e.getClass().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 对比快照,只UPDATE修改过的列,并更新快照.没有列被修改时返回false.
+     */
+    private boolean updateChangedColumns() {
+        final ColumnInfo[] columns = mTableInfo.getColumns();
+        final Object[] values = new Object[columns.length];
+        final List<String> changedNames = new ArrayList<String>();
+        final List<Object> changedValues = new ArrayList<Object>();
+
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].isPrimaryKey()) {
+                continue;
+            }
+
+            try {
+                values[i] = columns[i].getSnapshotValue(this);
+            } catch (IllegalAccessException e) {
+                Log.e(e.getClass().getName(), e);
+                continue;
+            }
+
+            if (!ColumnInfo.snapshotEquals(mSnapshot[i], values[i])) {
+                changedNames.add(columns[i].getName());
+                changedValues.add(values[i]);
+            }
+        }
+
+        if (changedNames.isEmpty()) {
+            return false;
+        }
+
+        final String sql = SQLiteUtils.createUpdateSql(mTableInfo,
+                changedNames.toArray(new String[changedNames.size()]));
+        changedValues.add(mId);
+        SQLiteUtils.execSql(sql, changedValues.toArray());
+
+        publishSnapshot(values);
+        return true;
+    }
+
+    /**
+     * 更新快照,并登记到当前线程的事务中,事务回滚时快照被作废
+     */
+    private void publishSnapshot(Object[] snapshot) {
+        mSnapshot = snapshot;
+
+        final NotificationDispatcher dispatcher = Cache.getNotificationDispatcher();
+        if (dispatcher != null) {
+            dispatcher.trackSnapshot(this);
+        }
+    }
+
+    /**
+     * 没有生成ModelBinder时,通过反射设置每一列的值.
+     * columnIndexes和TableInfo.getColumns()一一对应,取的是每个列名第一次出现的位置,
+     * 以修复JOIN结果中多个表有同名列时的issue #106 (https://github.com/pardom/ActiveAndroid/issues/106).
+     */
+    private void loadFromCursorReflectively(Cursor cursor, int[] columnIndexes) {
+        final ColumnInfo[] columns = mTableInfo.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            final ColumnInfo column = columns[i];
+            final int columnIndex = columnIndexes[i];
+
+            if (columnIndex < 0) {
+                continue;
+            }
+
+            try {
+                column.loadValue(this, cursor, columnIndex);
+            } catch (IllegalArgumentException e) {
+                Log.e(e.getClass().getName(), e);
+            } catch (IllegalAccessException e) {
+                Log.e(e.getClass().getName(), e);
+            }
+        }
+    }
+
     //////////////////////////////////////////////////////////////////////////////////////
     // OVERRIDEN METHODS
     //////////////////////////////////////////////////////////////////////////////////////
@@ -29,8 +29,8 @@ final class ModelInfo {
      * 存储Model和TableInfo的键值对Map
      * TableInfo是通过用户自定义Model解析出来的
      */
-    private Map<Class<? extends Model>, TableInfo> mTableInfos = new HashMap<Class<? extends Model>, TableInfo>();
-    private Map<Class<?>, TypeSerializer> mTypeSerializers = new HashMap<Class<?>, TypeSerializer>() {
+    private final Map<Class<? extends Model>, TableInfo> mTableInfos = new HashMap<Class<? extends Model>, TableInfo>();
+    private final Map<Class<?>, TypeSerializer> mTypeSerializers = new HashMap<Class<?>, TypeSerializer>() {
         {
             put(Calendar.class, new CalendarSerializer());
             put(java.sql.Date.class, new SqlDateSerializer());
@@ -56,6 +56,11 @@ final class ModelInfo {
             }
         }
 
+        // 所有Model和TypeSerializer都加载完成后,再生成每张表的列信息
+        for (TableInfo tableInfo : mTableInfos.values()) {
+            tableInfo.resolveColumns(this);
+        }
+
         Log.i("ModelInfo loaded.");
     }
 
@@ -0,0 +1,224 @@
+package com.activeandroid;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.activeandroid.content.ContentProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数据变更通知的统一出口,由Cache持有.
+ *
+ * 1. 在ActiveAndroid.beginTransaction()和endTransaction()之间,通知按表缓存并去重,
+ *    最外层事务提交成功后一次性发出,事务回滚时全部丢弃.事务是按线程区分的,所以缓存也按线程保存.
+ * 2. 事务之外,debounce时间为0时立即通知;大于0时在时间窗口内合并,窗口结束后在主线程统一发出.
+ * 3. 事务中更新过变更跟踪快照的Model也按事务记录,事务回滚时作废这些快照,
+ *    否则快照已经等于字段的值,下一次save()会认为没有修改而丢掉被回滚的更新.
+ *
+ * 同一张表在一次合并中有多行变化时,合并为一条表级别的Uri.
+ * ContentResolver会把表级别的通知同时分发给注册在行Uri上的观察者.
+ */
+public final class NotificationDispatcher {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final Context mContext;
+    private final long mDebounceMillis;
+
+    /**
+     * 主线程Handler,debounce为0时为null
+     */
+    private final Handler mHandler;
+
+    /**
+     * 当前线程通过ActiveAndroid.beginTransaction()开启的事务
+     */
+    private final ThreadLocal<Transaction> mTransactions = new ThreadLocal<Transaction>();
+
+    /**
+     * 事务之外等待debounce窗口结束的通知,访问时需要持有this锁
+     */
+    private final Map<Class<? extends Model>, Long> mPending = new LinkedHashMap<Class<? extends Model>, Long>();
+
+    private final Runnable mFlushPending = new Runnable() {
+        @Override
+        public void run() {
+            flushPending();
+        }
+    };
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    NotificationDispatcher(Context context, long debounceMillis) {
+        mContext = context;
+        mDebounceMillis = debounceMillis;
+        mHandler = debounceMillis > 0 ? new Handler(Looper.getMainLooper()) : null;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 通知type表中id这一行发生了变化,id为null表示整张表
+     */
+    public void notifyChange(Class<? extends Model> type, Long id) {
+        // 数据已经写入,不论通知何时发出,缓存的关联列表都立即过期
+        Cache.markTableChanged(type);
+
+        final Transaction transaction = mTransactions.get();
+        if (transaction != null) {
+            coalesce(transaction.changes, type, id);
+            return;
+        }
+
+        if (mHandler == null) {
+            dispatch(type, id);
+            return;
+        }
+
+        final boolean schedule;
+        synchronized (this) {
+            schedule = mPending.isEmpty();
+            coalesce(mPending, type, id);
+        }
+
+        if (schedule) {
+            mHandler.postDelayed(mFlushPending, mDebounceMillis);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * model在当前线程的事务中更新了快照,事务回滚时调用Model.discardSnapshot().不在事务中时什么也不做.
+     */
+    void trackSnapshot(Model model) {
+        final Transaction transaction = mTransactions.get();
+        if (transaction != null) {
+            transaction.snapshots.add(model);
+        }
+    }
+
+    void beginTransaction() {
+        Transaction transaction = mTransactions.get();
+        if (transaction == null) {
+            transaction = new Transaction();
+            mTransactions.set(transaction);
+        }
+
+        transaction.levels.add(Boolean.FALSE);
+    }
+
+    void setTransactionSuccessful() {
+        final Transaction transaction = mTransactions.get();
+        if (transaction != null && !transaction.levels.isEmpty()) {
+            transaction.levels.set(transaction.levels.size() - 1, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 结束当前线程最内层的事务.
+     * 和SQLiteDatabase一样,任意一层没有调用setTransactionSuccessful()都会导致整个事务回滚.
+     *
+     * @param ended SQLiteDatabase.endTransaction()是否正常返回,提交失败时为false
+     */
+    void endTransaction(boolean ended) {
+        final Transaction transaction = mTransactions.get();
+        if (transaction == null || transaction.levels.isEmpty()) {
+            return;
+        }
+
+        final boolean successful = transaction.levels.remove(transaction.levels.size() - 1);
+        if (!successful || !ended) {
+            transaction.rolledBack = true;
+        }
+
+        if (!transaction.levels.isEmpty()) {
+            return;
+        }
+
+        mTransactions.remove();
+        if (transaction.rolledBack) {
+            for (Model model : transaction.snapshots) {
+                model.discardSnapshot();
+            }
+            return;
+        }
+
+        for (Map.Entry<Class<? extends Model>, Long> entry : transaction.changes.entrySet()) {
+            dispatch(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 丢弃debounce窗口中还没有发出的通知
+     */
+    synchronized void cancelPending() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mFlushPending);
+        }
+        mPending.clear();
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 同一张表只保留一条通知,不同行的变化合并为整张表
+     */
+    private static void coalesce(Map<Class<? extends Model>, Long> changes, Class<? extends Model> type, Long id) {
+        if (!changes.containsKey(type)) {
+            changes.put(type, id);
+            return;
+        }
+
+        final Long current = changes.get(type);
+        if (current != null && !current.equals(id)) {
+            changes.put(type, null);
+        }
+    }
+
+    private void flushPending() {
+        final Map<Class<? extends Model>, Long> changes;
+        synchronized (this) {
+            changes = new LinkedHashMap<Class<? extends Model>, Long>(mPending);
+            mPending.clear();
+        }
+
+        for (Map.Entry<Class<? extends Model>, Long> entry : changes.entrySet()) {
+            dispatch(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void dispatch(Class<? extends Model> type, Long id) {
+        final Uri uri = ContentProvider.createUri(type, id);
+        mContext.getContentResolver().notifyChange(uri, null);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // INNER CLASSES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 一个线程上的(可能嵌套的)事务,levels记录每一层是否调用了setTransactionSuccessful()
+     */
+    private static final class Transaction {
+        final List<Boolean> levels = new ArrayList<Boolean>();
+        final Map<Class<? extends Model>, Long> changes = new LinkedHashMap<Class<? extends Model>, Long>();
+        final List<Model> snapshots = new ArrayList<Model>();
+        boolean rolledBack;
+    }
+}
@@ -0,0 +1,105 @@
+package com.activeandroid;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.v4.util.LruCache;
+
+/**
+ * 以SQL文本为key的SQLiteStatement缓存,由Cache持有.
+ *
+ * SQLiteStatement的参数绑定保存在对象内部,多个线程同时使用同一个Statement会互相覆盖参数,
+ * 所以采用"借出-归还"的方式:acquire()把Statement从缓存中取出,使用期间只属于当前线程,
+ * release()再放回缓存.同一条SQL被并发使用时,额外编译的Statement在归还时如果缓存中已经有了就直接关闭.
+ *
+ * 缓存的Statement只对编译它的SQLiteDatabase有效,数据库句柄变化或关闭时全部清空.
+ * 被LRU淘汰或者被替换的Statement会被关闭.
+ */
+final class StatementCache {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 缓存大小为0时为null,此时不缓存,每次都重新编译
+     */
+    private final LruCache<String, SQLiteStatement> mStatements;
+
+    /**
+     * 缓存中Statement所属的数据库句柄
+     */
+    private SQLiteDatabase mDatabase;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    StatementCache(int maxSize) {
+        if (maxSize > 0) {
+            mStatements = new LruCache<String, SQLiteStatement>(maxSize) {
+                @Override
+                protected void entryRemoved(boolean evicted, String key, SQLiteStatement oldValue,
+                                            SQLiteStatement newValue) {
+                    // remove()是acquire()借出,不能关闭;只有淘汰和替换时才关闭
+                    if (evicted || newValue != null) {
+                        oldValue.close();
+                    }
+                }
+            };
+        } else {
+            mStatements = null;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 借出一条已编译的Statement,参数已清空.使用完毕后必须调用release()
+     */
+    SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        SQLiteStatement statement = null;
+
+        synchronized (this) {
+            if (mStatements != null) {
+                if (mDatabase != db) {
+                    mStatements.evictAll();
+                    mDatabase = db;
+                }
+                statement = mStatements.remove(sql);
+            }
+        }
+
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+        } else {
+            statement.clearBindings();
+        }
+
+        return statement;
+    }
+
+    /**
+     * 归还acquire()借出的Statement
+     */
+    void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+        synchronized (this) {
+            if (mStatements != null && mDatabase == db && db.isOpen() && mStatements.get(sql) == null) {
+                mStatements.put(sql, statement);
+                return;
+            }
+        }
+
+        statement.close();
+    }
+
+    /**
+     * 关闭并清空所有缓存的Statement
+     */
+    synchronized void evictAll() {
+        if (mStatements != null) {
+            mStatements.evictAll();
+        }
+        mDatabase = null;
+    }
+}
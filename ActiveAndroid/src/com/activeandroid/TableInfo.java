@@ -5,17 +5,28 @@ import android.util.Log;
 
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Table;
+import com.activeandroid.binder.BinderUtils;
+import com.activeandroid.binder.ModelBinder;
 import com.activeandroid.util.ReflectionUtils;
+import com.activeandroid.util.SQLiteUtils;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class TableInfo {
+    /**
+     * 每张表最多缓存的列下标映射数,即不同的查询列结构数
+     */
+    private static final int MAX_COLUMN_MAPPINGS = 8;
+
     /**
      * 当前用户自定义Model的Class对象
      */
@@ -31,14 +42,85 @@ public final class TableInfo {
      */
     private String mIdName = Table.DEFAULT_ID_NAME;
 
+    /**
+     * 是否开启变更跟踪,见Table.trackChanges()
+     */
+    private boolean mTrackChanges;
+
+    /**
+     * Table注解声明的缓存方式,没有注解时为CachePolicy.shared()
+     */
+    private CachePolicy mCachePolicy = CachePolicy.shared();
+
     /**
      * 表的每一列和其名称的Map映射
      */
     private Map<Field, String> mColumnNames = new LinkedHashMap<Field, String>();
 
+    /**
+     * 每一列的描述信息,顺序和mColumnNames一致,在ModelInfo加载完成后创建
+     */
+    private ColumnInfo[] mColumns;
+
+    /**
+     * 编译INSERT/UPDATE语句时绑定参数的列名顺序,不包含主键
+     */
+    private String[] mBindColumnNames;
+
+    /**
+     * 从Cursor读取一行时依次读取的列名:使用ModelBinder时和mBindColumnNames相同,否则为mColumns的每一列
+     */
+    private String[] mLoadColumnNames;
+
+    /**
+     * 按Cursor的列名缓存的列下标映射,同一种查询的列结构总是相同的,访问时需要持有它的锁
+     */
+    private final Map<List<String>, ColumnMapping> mColumnMappings =
+            new LinkedHashMap<List<String>, ColumnMapping>(MAX_COLUMN_MAPPINGS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<String>, ColumnMapping> eldest) {
+                    return size() > MAX_COLUMN_MAPPINGS;
+                }
+            };
+
+    /**
+     * 表数据的修改次数,每次写入后加一,用于判断Cache中缓存的关联列表是否过期
+     */
+    private final AtomicInteger mVersion = new AtomicInteger();
+
+    /**
+     * 表上的索引,每一项为按顺序排列的列名.
+     * 包括Column注解的index和indexGroups,以及SQLite为unique和uniqueGroups自动创建的索引,不包括主键.
+     */
+    private List<String[]> mIndexes;
+
+    /**
+     * 按主键插入、更新、删除一行的SQL,作为StatementCache的key,只生成一次
+     */
+    private String mInsertSql;
+    private String mUpdateSql;
+    private String mDeleteSql;
+
+    /**
+     * upsert使用的唯一键:第一个unique列,没有时为第一个uniqueGroups组合,都没有时为空数组
+     */
+    private ColumnInfo[] mUniqueKey;
+
+    /**
+     * 按唯一键更新一行和查询主键的SQL,没有唯一键时为null
+     */
+    private String mUpsertUpdateSql;
+    private String mUniqueKeyQuerySql;
+
+    /**
+     * 编译期生成的ModelBinder,没有生成时为null,此时Model使用反射读写每一列
+     */
+    private ModelBinder<Model> mModelBinder;
+
     /**
      * 构造函数,根据用户自定义的Model类生成TableInfo对象
      */
+    @SuppressWarnings("unchecked")
     public TableInfo(Class<? extends Model> type) {
         mType = type;
 
@@ -48,6 +130,8 @@ public final class TableInfo {
             // 如果有Table注解,则使用Table注解中的表名和主键名
             mTableName = tableAnnotation.name();
             mIdName = tableAnnotation.id();
+            mTrackChanges = tableAnnotation.trackChanges();
+            mCachePolicy = CachePolicy.of(type, tableAnnotation);
         } else {
             // 没有Table注解,使用类名作为表名
             mTableName = type.getSimpleName();
@@ -74,6 +158,7 @@ public final class TableInfo {
             }
         }
 
+        mModelBinder = (ModelBinder<Model>) BinderUtils.findModelBinder(type);
     }
 
     //////////////////////////////////////////////////////////////////////////////////////
@@ -100,6 +185,296 @@ public final class TableInfo {
         return mColumnNames.get(field);
     }
 
+    /**
+     * 获取每一列的描述信息.返回的是内部数组,为了避免拷贝没有做保护,调用方不要修改.
+     */
+    public ColumnInfo[] getColumns() {
+        return mColumns;
+    }
+
+    public ColumnInfo getColumnInfo(Field field) {
+        for (ColumnInfo column : mColumns) {
+            if (column.getField().equals(field)) {
+                return column;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * 获取编译INSERT/UPDATE语句时绑定参数的列名顺序,不包含主键.调用方不要修改返回的数组.
+     */
+    public String[] getBindColumnNames() {
+        return mBindColumnNames;
+    }
+
+    /**
+     * 获取从Cursor读取一行时依次读取的列名,和ColumnMapping.getColumnIndexes()一一对应.调用方不要修改返回的数组.
+     */
+    public String[] getLoadColumnNames() {
+        return mLoadColumnNames;
+    }
+
+    /**
+     * 获取Cursor列结构对应的列下标映射,相同列名的Cursor复用同一个映射
+     */
+    public ColumnMapping getColumnMapping(String[] cursorColumnNames) {
+        final List<String> key = Arrays.asList(cursorColumnNames);
+        synchronized (mColumnMappings) {
+            ColumnMapping mapping = mColumnMappings.get(key);
+            if (mapping == null) {
+                // Cursor可能返回内部数组,作为key时需要拷贝
+                mapping = new ColumnMapping(cursorColumnNames, mIdName, mLoadColumnNames);
+                mColumnMappings.put(new ArrayList<String>(key), mapping);
+            }
+            return mapping;
+        }
+    }
+
+    /**
+     * 获取Cursor列结构对应的列下标映射,每一列在Cursor中的列名为prefix加上列名,用于join查询中带别名的列.
+     * 不做缓存,每次查询调用一次.
+     */
+    public ColumnMapping createColumnMapping(String[] cursorColumnNames, String prefix) {
+        final String[] names = new String[mLoadColumnNames.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = prefix + mLoadColumnNames[i];
+        }
+
+        return new ColumnMapping(cursorColumnNames, prefix + mIdName, names);
+    }
+
+    /**
+     * 获取表上的索引,每一项为按顺序排列的列名,不包括主键
+     */
+    public List<String[]> getIndexes() {
+        return mIndexes;
+    }
+
+    /**
+     * 是否存在以columns为前缀的索引,可以用来按columns排序和范围查找.
+     * columns为空时总是返回true,因为主键本身就是索引.
+     */
+    public boolean hasIndex(String... columns) {
+        if (columns.length == 0) {
+            return true;
+        }
+
+        for (String[] index : mIndexes) {
+            if (index.length < columns.length) {
+                continue;
+            }
+
+            boolean matches = true;
+            for (int i = 0; i < columns.length && matches; i++) {
+                matches = index[i].equals(columns[i]);
+            }
+            if (matches) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 获取表数据的修改次数.通过ActiveAndroid写入数据时加一,直接执行的SQL不会改变它.
+     */
+    public int getVersion() {
+        return mVersion.get();
+    }
+
+    public boolean isTrackingChanges() {
+        return mTrackChanges;
+    }
+
+    /**
+     * Table注解声明的缓存方式,Cache初始化时Configuration中指定的方式优先
+     */
+    public CachePolicy getCachePolicy() {
+        return mCachePolicy;
+    }
+
+    public String getInsertSql() {
+        return mInsertSql;
+    }
+
+    /**
+     * 除主键外没有其他列时返回null
+     */
+    public String getUpdateSql() {
+        return mUpdateSql;
+    }
+
+    public String getDeleteSql() {
+        return mDeleteSql;
+    }
+
+    /**
+     * upsert使用的唯一键.调用方不要修改返回的数组.
+     */
+    public ColumnInfo[] getUniqueKey() {
+        return mUniqueKey;
+    }
+
+    public String getUpsertUpdateSql() {
+        return mUpsertUpdateSql;
+    }
+
+    public String getUniqueKeyQuerySql() {
+        return mUniqueKeyQuerySql;
+    }
+
+    public ModelBinder<Model> getModelBinder() {
+        return mModelBinder;
+    }
+
+    void incrementVersion() {
+        mVersion.incrementAndGet();
+    }
+
+    /**
+     * 创建每一列的ColumnInfo.
+     * TypeSerializer可能在Model之后才被扫描到,所以要等ModelInfo全部加载完成后再调用.
+     */
+    void resolveColumns(ModelInfo modelInfo) {
+        final ColumnInfo[] columns = new ColumnInfo[mColumnNames.size()];
+        int i = 0;
+        for (Map.Entry<Field, String> entry : mColumnNames.entrySet()) {
+            final Field field = entry.getKey();
+            final String name = entry.getValue();
+            columns[i++] = new ColumnInfo(field, name, name.equals(mIdName),
+                    modelInfo.getTypeSerializer(field.getType()));
+        }
+
+        mColumns = columns;
+        synchronized (mColumnMappings) {
+            mColumnMappings.clear();
+        }
+
+        if (mModelBinder != null) {
+            mBindColumnNames = mModelBinder.getColumnNames();
+            mLoadColumnNames = mBindColumnNames;
+        } else {
+            final List<String> names = new ArrayList<String>();
+            for (ColumnInfo column : columns) {
+                if (!column.isPrimaryKey()) {
+                    names.add(column.getName());
+                }
+            }
+            mBindColumnNames = names.toArray(new String[names.size()]);
+
+            mLoadColumnNames = new String[columns.length];
+            for (int j = 0; j < columns.length; j++) {
+                mLoadColumnNames[j] = columns[j].getName();
+            }
+        }
+
+        mInsertSql = SQLiteUtils.createInsertSql(this);
+        mUpdateSql = SQLiteUtils.createUpdateSql(this);
+        mDeleteSql = SQLiteUtils.createDeleteSql(this);
+
+        mIndexes = Collections.unmodifiableList(resolveIndexes(columns));
+
+        mUniqueKey = resolveUniqueKey(columns);
+        if (mUniqueKey.length > 0) {
+            mUpsertUpdateSql = SQLiteUtils.createUpsertUpdateSql(this);
+            mUniqueKeyQuerySql = SQLiteUtils.createUniqueKeyQuerySql(this);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 和SQLiteUtils.createIndexDefinition()、createUniqueDefinition()使用同样的规则读取Column注解,
+     * 组合索引中列的顺序就是列的声明顺序
+     */
+    private static List<String[]> resolveIndexes(ColumnInfo[] columns) {
+        final List<String[]> indexes = new ArrayList<String[]>();
+        final Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+
+        for (ColumnInfo column : columns) {
+            final Column annotation = column.getColumn();
+            if (column.isPrimaryKey() || annotation == null) {
+                continue;
+            }
+
+            if (annotation.index() || annotation.unique()) {
+                indexes.add(new String[] { column.getName() });
+            }
+            addToGroups(groups, "index:", annotation.indexGroups(), column.getName());
+            addToGroups(groups, "unique:", annotation.uniqueGroups(), column.getName());
+        }
+
+        for (List<String> group : groups.values()) {
+            indexes.add(group.toArray(new String[group.size()]));
+        }
+
+        return indexes;
+    }
+
+    private static void addToGroups(Map<String, List<String>> groups, String prefix, String[] names, String column) {
+        for (String name : names) {
+            if (TextUtils.isEmpty(name)) {
+                continue;
+            }
+
+            List<String> group = groups.get(prefix + name);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(prefix + name, group);
+            }
+            group.add(column);
+        }
+    }
+
+    /**
+     * 和SQLiteUtils.createUniqueDefinition()使用同样的规则读取Column注解:
+     * 优先使用第一个unique列,其次使用第一个声明的uniqueGroups组合
+     */
+    private static ColumnInfo[] resolveUniqueKey(ColumnInfo[] columns) {
+        final Map<String, List<ColumnInfo>> groups = new LinkedHashMap<String, List<ColumnInfo>>();
+
+        for (ColumnInfo column : columns) {
+            final Column annotation = column.getColumn();
+            if (annotation == null) {
+                continue;
+            }
+
+            if (annotation.unique()) {
+                return new ColumnInfo[]{column};
+            }
+
+            final String[] uniqueGroups = annotation.uniqueGroups();
+            if (uniqueGroups.length != annotation.onUniqueConflicts().length) {
+                continue;
+            }
+
+            for (String group : uniqueGroups) {
+                if (TextUtils.isEmpty(group)) {
+                    continue;
+                }
+
+                List<ColumnInfo> list = groups.get(group);
+                if (list == null) {
+                    list = new ArrayList<ColumnInfo>();
+                    groups.put(group, list);
+                }
+                list.add(column);
+            }
+        }
+
+        if (groups.isEmpty()) {
+            return new ColumnInfo[0];
+        }
+
+        final List<ColumnInfo> group = groups.values().iterator().next();
+        return group.toArray(new ColumnInfo[group.size()]);
+    }
+
     /**
      * 获取主键的Field,即mId成员代表的Field.
      */
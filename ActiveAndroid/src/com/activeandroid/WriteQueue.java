@@ -0,0 +1,459 @@
+package com.activeandroid;
+
+import com.activeandroid.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 单写线程的异步写队列,由Cache持有.
+ *
+ * 所有写操作在同一个后台线程上执行.写线程每次从队列中取出一批操作,在一个事务中执行并提交(group commit),
+ * 提交完成后才完成每个操作的Future和Callback,变更通知也在提交后按表合并发出.
+ *
+ * 一批操作共享同一个事务:某个操作抛出异常时整个事务回滚,只有这个操作的Future以异常结束,
+ * 通过Model.saveAsync()插入时回填的id也会被重置;同一批的其他操作撤销内存中的修改后在新的事务中重新执行.
+ * 所以一个操作是否成功只取决于它自己,和它恰好与哪些操作分在同一批无关.
+ *
+ * 队列有容量上限,写满时submit()阻塞调用线程,直到写线程腾出空间.
+ * flush()等待在它之前提交的所有操作都已提交到数据库,之后在任意线程上都能读到这些写入.
+ */
+public final class WriteQueue {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 一个事务中最多执行的操作数,避免长事务长时间阻塞读
+     */
+    private static final int MAX_BATCH_SIZE = 128;
+
+    private static final String THREAD_NAME = "ActiveAndroid-Writer";
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC INTERFACES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 操作完成后在写线程上回调,不要在回调中执行耗时操作
+     */
+    public interface Callback<T> {
+        void onComplete(T result);
+
+        void onError(Throwable error);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final BlockingQueue<Operation<?>> mQueue;
+
+    /**
+     * 写线程,第一次submit()时启动
+     */
+    private Thread mThread;
+
+    private boolean mShutdown;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    WriteQueue(int capacity) {
+        mQueue = new ArrayBlockingQueue<Operation<?>>(capacity);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public <T> Future<T> submit(Callable<T> callable) {
+        return submit(callable, null);
+    }
+
+    /**
+     * 将写操作加入队列,队列已满时阻塞
+     *
+     * @throws RejectedExecutionException 队列已经关闭,或者等待时线程被中断
+     */
+    public <T> Future<T> submit(Callable<T> callable, Callback<T> callback) {
+        return enqueue(new Operation<T>(callable, callback));
+    }
+
+    /**
+     * 等待在此之前加入队列的所有操作都已提交.
+     * 在写线程上(例如Callback中)调用时直接返回,因为当前这一批还没有提交,等待会导致死锁.
+     */
+    public void flush() {
+        if (isWriterThread()) {
+            return;
+        }
+
+        final Future<Void> barrier = submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        });
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    barrier.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // 之前的批次提交失败,屏障本身也随之失败,此时队列中已经没有更早的操作了
+                    return;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isWriterThread() {
+        synchronized (this) {
+            return Thread.currentThread() == mThread;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    <T> Future<T> enqueue(Operation<T> operation) {
+        synchronized (this) {
+            if (mShutdown) {
+                throw new RejectedExecutionException("WriteQueue has been shut down.");
+            }
+            if (mThread == null) {
+                mThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        processBatches();
+                    }
+                }, THREAD_NAME);
+                mThread.setDaemon(true);
+                mThread.start();
+            }
+        }
+
+        try {
+            mQueue.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for space in the WriteQueue.", e);
+        }
+
+        return operation;
+    }
+
+    /**
+     * 停止接收新的操作,等待队列中已有的操作执行完、写线程退出,最多等待timeoutMillis.
+     * 在写线程上调用时不等待.
+     *
+     * @return 写线程是否已经退出,返回false时仍可能有操作在执行
+     */
+    boolean shutdown(long timeoutMillis) {
+        final Thread thread;
+        final boolean first;
+        synchronized (this) {
+            first = !mShutdown;
+            mShutdown = true;
+            thread = mThread;
+        }
+        if (thread == null) {
+            return true;
+        }
+        if (thread == Thread.currentThread()) {
+            return false;
+        }
+
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean interrupted = false;
+        try {
+            // 空操作作为结束标记,写线程执行完它所在的批次后退出.
+            // 队列已满时只等待到deadline,不会一直阻塞调用方
+            if (first) {
+                final Operation<Void> stop = new Operation<Void>(null, null);
+                try {
+                    if (!mQueue.offer(stop, Math.max(0, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS)) {
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    return false;
+                }
+            }
+
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                try {
+                    thread.join(remaining);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return !thread.isAlive();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private void processBatches() {
+        final List<Operation<?>> batch = new ArrayList<Operation<?>>(MAX_BATCH_SIZE);
+
+        while (true) {
+            try {
+                batch.add(mQueue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            mQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            executeBatch(batch);
+
+            boolean stop = false;
+            for (Operation<?> operation : batch) {
+                stop |= operation.isStopMarker();
+            }
+            batch.clear();
+
+            if (stop) {
+                // 和shutdown()并发加入的操作不会再执行,以异常结束,避免调用方永远等待
+                mQueue.drainTo(batch);
+                final RejectedExecutionException error =
+                        new RejectedExecutionException("WriteQueue has been shut down.");
+                for (Operation<?> operation : batch) {
+                    operation.complete(error);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中执行batch.某个操作失败时回滚,这个操作以它的异常结束,
+     * 已经执行的其他操作撤销内存中的修改,和剩下的操作一起在新的事务中重新执行,直到提交成功
+     */
+    private void executeBatch(List<Operation<?>> batch) {
+        final List<Operation<?>> pending = new ArrayList<Operation<?>>(batch);
+        while (!pending.isEmpty()) {
+            int executed = 0;
+            Operation<?> failed = null;
+            RuntimeException error = null;
+
+            try {
+                ActiveAndroid.beginTransaction();
+                try {
+                    for (Operation<?> operation : pending) {
+                        executed++;
+                        if (operation.execute() != null) {
+                            failed = operation;
+                            break;
+                        }
+                    }
+
+                    if (failed == null) {
+                        ActiveAndroid.setTransactionSuccessful();
+                    }
+                } finally {
+                    ActiveAndroid.endTransaction();
+                }
+            } catch (RuntimeException e) {
+                // 开启或提交事务失败,写线程不能退出,否则后续的Future永远不会完成
+                Log.e("Failed to commit write batch", e);
+                error = e;
+            }
+
+            if (failed == null && error == null) {
+                for (Operation<?> operation : pending) {
+                    operation.complete(null);
+                }
+                return;
+            }
+
+            for (int i = 0; i < executed; i++) {
+                pending.get(i).rollback();
+            }
+
+            if (error != null) {
+                // 无法确定是哪个操作导致的,剩下的操作全部以这个异常结束
+                for (Operation<?> operation : pending) {
+                    operation.complete(error);
+                }
+                return;
+            }
+
+            pending.remove(failed);
+            failed.complete(null);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // INNER CLASSES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 队列中的一个写操作,同时也是返回给调用方的Future.
+     * 执行结果先暂存,所在批次提交或回滚后才完成.
+     */
+    static class Operation<T> implements Future<T> {
+        private final Callable<T> mCallable;
+        private final Callback<T> mCallback;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        private volatile boolean mCancelled;
+        private boolean mStarted;
+        private T mResult;
+        private Throwable mError;
+
+        Operation(Callable<T> callable, Callback<T> callback) {
+            mCallable = callable;
+            mCallback = callback;
+        }
+
+        /**
+         * 执行过这个操作的事务回滚时调用,子类在这里撤销对内存中对象的修改.操作没有失败时之后还会重新执行
+         */
+        void onRollback() {
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // 只能取消还没有开始执行的操作
+            synchronized (this) {
+                if (mStarted || mCancelled) {
+                    return false;
+                }
+                mCancelled = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mCancelled || mDone.getCount() == 0;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            if (!mCancelled) {
+                mDone.await();
+            }
+            return getResult();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                TimeoutException {
+            if (!mCancelled && !mDone.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private boolean isStopMarker() {
+            return mCallable == null;
+        }
+
+        /**
+         * 在写线程的事务中执行,返回抛出的异常
+         */
+        private Throwable execute() {
+            synchronized (this) {
+                if (mCancelled || mCallable == null) {
+                    return null;
+                }
+                mStarted = true;
+            }
+
+            try {
+                final T result = mCallable.call();
+                synchronized (this) {
+                    mResult = result;
+                }
+                return null;
+            } catch (Throwable e) {
+                synchronized (this) {
+                    mError = e;
+                }
+                return e;
+            }
+        }
+
+        private void rollback() {
+            if (!mCancelled && mCallable != null) {
+                onRollback();
+            }
+        }
+
+        private void complete(Throwable batchError) {
+            synchronized (this) {
+                if (batchError != null && mError == null) {
+                    mError = batchError;
+                    mResult = null;
+                }
+            }
+            mDone.countDown();
+
+            if (mCallback == null || mCancelled) {
+                return;
+            }
+
+            try {
+                if (mError != null) {
+                    mCallback.onError(mError);
+                } else {
+                    mCallback.onComplete(mResult);
+                }
+            } catch (RuntimeException e) {
+                Log.e("WriteQueue callback failed", e);
+            }
+        }
+
+        private T getResult() throws ExecutionException {
+            if (mCancelled) {
+                throw new CancellationException();
+            }
+            if (mError != null) {
+                throw new ExecutionException(mError);
+            }
+            return mResult;
+        }
+    }
+}
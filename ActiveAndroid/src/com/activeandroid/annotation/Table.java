@@ -11,6 +11,28 @@ public @interface Table {
 
     public static final String DEFAULT_ID_NAME = "Id";
 
+    /**
+     * 实体在Cache中的缓存方式,见CachePolicy
+     */
+    public enum CacheMode {
+        /**
+         * 和其他表共享Configuration.getCacheSize()的容量
+         */
+        SHARED,
+        /**
+         * 使用cacheSize()指定的单独容量
+         */
+        SEPARATE,
+        /**
+         * 一直保留,不淘汰
+         */
+        PINNED,
+        /**
+         * 不缓存
+         */
+        DISABLED
+    }
+
     /**
      * 表名
      */
@@ -20,4 +42,25 @@ public @interface Table {
      * 主键名
      */
     public String id() default DEFAULT_ID_NAME;
+
+    /**
+     * 是否开启变更跟踪.
+     * 开启后Model在加载和保存时记录每一列的快照,更新时只写入修改过的列,没有修改时不写库也不发送通知.
+     */
+    public boolean trackChanges() default false;
+
+    /**
+     * 实体在Cache中的缓存方式.Configuration.Builder.setCachePolicy()指定的方式优先.
+     */
+    public CacheMode cacheMode() default CacheMode.SHARED;
+
+    /**
+     * cacheMode为SEPARATE时的容量,必须大于0
+     */
+    public int cacheSize() default 0;
+
+    /**
+     * 实体在Cache中最多保留的毫秒数,0表示不过期
+     */
+    public long cacheTtl() default 0;
 }
@@ -0,0 +1,170 @@
+package com.activeandroid.binder;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.ColumnInfo.ValueType;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+import com.activeandroid.query.Select;
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.Log;
+import com.activeandroid.util.SQLiteUtils;
+
+import java.util.Map;
+
+/**
+ * 生成的ModelBinder代码使用的辅助方法.
+ * 编译期无法确定的类型(例如需要TypeSerializer的Date、Calendar)都交给这里在运行期处理.
+ */
+@SuppressWarnings("unchecked")
+public final class BinderUtils {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 生成的ModelBinder类名后缀
+     */
+    public static final String BINDER_SUFFIX = "$$ModelBinder";
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private BinderUtils() {
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 查找Model对应的生成类,不存在时返回null,调用方回退到反射路径
+     */
+    public static <T extends Model> ModelBinder<T> findModelBinder(Class<T> type) {
+        try {
+            Class<?> binderClass = Class.forName(type.getName() + BINDER_SUFFIX, true, type.getClassLoader());
+            return (ModelBinder<T>) binderClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (InstantiationException e) {
+            Log.e("Couldn't instantiate ModelBinder for " + type.getName(), e);
+        } catch (IllegalAccessException e) {
+            Log.e("IllegalAccessException", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * 获取列名在Cursor中第一次出现的位置.
+     * 不使用Cursor.getColumnIndex(),是为了兼容join查询中的同名列(issue #106).
+     */
+    public static int getColumnIndex(String[] columnNames, String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnName.equals(columnNames[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * 按names的顺序获取每一列在Cursor中第一次出现的位置,不存在的列为-1
+     */
+    public static int[] getColumnIndexes(String[] columnNames, String[] names) {
+        final int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = getColumnIndex(columnNames, names[i]);
+        }
+
+        return indexes;
+    }
+
+    /**
+     * 根据外键id获取实体,优先从缓存和当前查询预取的实体中查找
+     */
+    public static <T extends Model> T loadEntity(Class<T> type, long id) {
+        Model entity = Cache.getEntity(type, id);
+        if (entity == null) {
+            final Map<Long, Model> prefetched = SQLiteUtils.getPrefetchedEntities(type);
+            if (prefetched != null && prefetched.containsKey(id)) {
+                return (T) prefetched.get(id);
+            }
+
+            TableInfo tableInfo = Cache.getTableInfo(type);
+            entity = new Select().from(type).where(tableInfo.getIdName() + "=?", id).executeSingle();
+        }
+
+        return (T) entity;
+    }
+
+    /**
+     * 按照Field声明的类型将值写入ContentValues,有TypeSerializer时先进行序列化
+     */
+    public static void putValue(ContentValues values, String columnName, Class<?> fieldType, Object value) {
+        if (value != null) {
+            final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+            if (typeSerializer != null) {
+                // serialize data
+                value = typeSerializer.serialize(value);
+                // set new object type
+                if (value != null) {
+                    fieldType = value.getClass();
+                    // check that the serializer returned what it promised
+                    if (!fieldType.equals(typeSerializer.getSerializedType())) {
+                        Log.w(String.format("TypeSerializer returned wrong type: expected a %s but got a %s",
+                                typeSerializer.getSerializedType(), fieldType));
+                    }
+                }
+            }
+        }
+
+        ColumnInfo.putValue(values, columnName, ValueType.of(fieldType), value);
+    }
+
+    /**
+     * 按照Field声明的类型将值绑定到SQLiteStatement的第index个参数,有TypeSerializer时先进行序列化
+     */
+    public static void bindValue(SQLiteProgram statement, int index, Class<?> fieldType, Object value) {
+        if (value != null) {
+            final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+            if (typeSerializer != null) {
+                value = typeSerializer.serialize(value);
+                if (value != null) {
+                    fieldType = value.getClass();
+                }
+            }
+        }
+
+        ColumnInfo.bindValue(statement, index, ValueType.of(fieldType), value);
+    }
+
+    /**
+     * 从Cursor读取任意类型的值,有TypeSerializer时进行反序列化.列值为NULL时返回null.
+     */
+    public static Object readValue(Cursor cursor, int columnIndex, Class<?> fieldType) {
+        if (cursor.isNull(columnIndex)) {
+            return null;
+        }
+
+        final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+        if (typeSerializer != null) {
+            fieldType = typeSerializer.getSerializedType();
+        }
+
+        Object value = ColumnInfo.readValue(cursor, columnIndex, ValueType.of(fieldType), fieldType);
+
+        // Use a deserializer if one is available
+        if (typeSerializer != null) {
+            value = typeSerializer.deserialize(value);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,40 @@
+package com.activeandroid.binder;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.Model;
+
+/**
+ * 由ActiveAndroid-compiler在编译期为每个Model生成的绑定类接口,类名为"Model类名$$ModelBinder".
+ * 生成的代码直接读写Model的成员变量,用来替代Model.save()和Model.loadFromCursor()中的反射.
+ * 主键mId由Model自己处理,ModelBinder只负责被Column注解标注的列.
+ */
+public interface ModelBinder<T extends Model> {
+    /**
+     * 按照bindStatement()绑定的顺序返回列名,不包含主键
+     */
+    String[] getColumnNames();
+
+    /**
+     * 将Model的每一列写入ContentValues
+     */
+    void bindValues(T model, ContentValues values);
+
+    /**
+     * 按照getColumnNames()的顺序,将每一列绑定到编译好的SQLiteStatement的第1..n个参数
+     */
+    void bindStatement(T model, SQLiteStatement statement);
+
+    /**
+     * 从Cursor的当前行读取每一列,填充Model的成员变量
+     */
+    void loadFromCursor(T model, Cursor cursor);
+
+    /**
+     * 和loadFromCursor(model, cursor)相同,但使用已经计算好的列下标,
+     * columnIndexes和getColumnNames()一一对应,不存在的列为-1
+     */
+    void loadFromCursor(T model, Cursor cursor, int[] columnIndexes);
+}
@@ -0,0 +1,26 @@
+package com.activeandroid.query;
+
+/**
+ * From.aggregate()支持的聚合函数
+ */
+public enum Aggregate {
+    SUM, AVG, MIN, MAX, COUNT_DISTINCT;
+
+    /**
+     * 生成聚合表达式.integral为false时SUM使用TOTAL(),没有行时结果为0.0而不是NULL.
+     */
+    String toSql(String column, boolean integral) {
+        switch (this) {
+            case SUM:
+                return (integral ? "SUM(" : "TOTAL(") + column + ")";
+            case AVG:
+                return "AVG(" + column + ")";
+            case MIN:
+                return "MIN(" + column + ")";
+            case MAX:
+                return "MAX(" + column + ")";
+            default:
+                return "COUNT(DISTINCT " + column + ")";
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.activeandroid.query;
+
+import android.database.Cursor;
+
+import java.lang.reflect.Array;
+import java.util.BitSet;
+
+/**
+ * 按列保存的查询结果,由From.executeColumnar()创建.
+ *
+ * 每一列是一个基本类型数组(long[]、double[]、int[])或String[],读取时直接从Cursor填充,
+ * 不为每一行创建Model或装箱对象,适合读取大量行的少数几列,例如绘制图表.
+ * 列值为NULL时数组中为0或null,可以用isNull()区分.
+ */
+public final class ColumnarResult {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC ENUMERATIONS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public enum ColumnType {
+        LONG(8), DOUBLE(8), INT(4), STRING(4);
+
+        /**
+         * 数组中每个元素占用的字节数,String列为引用的大小
+         */
+        private final int mElementSize;
+
+        ColumnType(int elementSize) {
+            mElementSize = elementSize;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 估算内存时每个数组和每个String对象的固定开销
+     */
+    private static final int ARRAY_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final String[] mColumnNames;
+    private final ColumnType[] mColumnTypes;
+
+    /**
+     * 每一列的数组,类型和mColumnTypes对应
+     */
+    private final Object[] mColumns;
+
+    /**
+     * 每一列中值为NULL的行,这一列没有NULL时为null
+     */
+    private final BitSet[] mNulls;
+
+    private int mRowCount;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private ColumnarResult(String[] columnNames, ColumnType[] columnTypes, int capacity) {
+        mColumnNames = columnNames;
+        mColumnTypes = columnTypes;
+        mColumns = new Object[columnTypes.length];
+        mNulls = new BitSet[columnTypes.length];
+
+        for (int i = 0; i < columnTypes.length; i++) {
+            mColumns[i] = newArray(columnTypes[i], capacity);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public int getColumnCount() {
+        return mColumnTypes.length;
+    }
+
+    public String getColumnName(int column) {
+        return mColumnNames[column];
+    }
+
+    public ColumnType getColumnType(int column) {
+        return mColumnTypes[column];
+    }
+
+    /**
+     * 按列名查找列的下标,不存在时返回-1
+     */
+    public int getColumnIndex(String name) {
+        for (int i = 0; i < mColumnNames.length; i++) {
+            if (mColumnNames[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * LONG列的数组,长度等于getRowCount().返回的是内部数组,不要修改.
+     */
+    public long[] getLongs(int column) {
+        return (long[]) getColumn(column, ColumnType.LONG);
+    }
+
+    public double[] getDoubles(int column) {
+        return (double[]) getColumn(column, ColumnType.DOUBLE);
+    }
+
+    public int[] getInts(int column) {
+        return (int[]) getColumn(column, ColumnType.INT);
+    }
+
+    public String[] getStrings(int column) {
+        return (String[]) getColumn(column, ColumnType.STRING);
+    }
+
+    public boolean isNull(int column, int row) {
+        if (row < 0 || row >= mRowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + mRowCount);
+        }
+        return mNulls[column] != null && mNulls[column].get(row);
+    }
+
+    /**
+     * 估算结果占用的内存字节数:所有数组的大小,加上String列中每个字符串的大小
+     */
+    public long getMemoryFootprint() {
+        long bytes = 0;
+        for (int i = 0; i < mColumnTypes.length; i++) {
+            bytes += ARRAY_OVERHEAD + (long) mRowCount * mColumnTypes[i].mElementSize;
+            if (mColumnTypes[i] == ColumnType.STRING) {
+                for (String value : (String[]) mColumns[i]) {
+                    if (value != null) {
+                        bytes += STRING_OVERHEAD + 2L * value.length();
+                    }
+                }
+            }
+            if (mNulls[i] != null) {
+                bytes += mNulls[i].size() / 8;
+            }
+        }
+        return bytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 读取cursor的所有行,第i列按columnTypes[i]读取
+     */
+    static ColumnarResult read(Cursor cursor, ColumnType[] columnTypes) {
+        if (cursor.getColumnCount() != columnTypes.length) {
+            throw new IllegalArgumentException("The query selects " + cursor.getColumnCount() + " columns but "
+                    + columnTypes.length + " column types were given.");
+        }
+
+        final int count = cursor.getCount();
+        final ColumnarResult result = new ColumnarResult(cursor.getColumnNames(), columnTypes, count);
+        while (cursor.moveToNext()) {
+            result.appendRow(cursor);
+        }
+        result.trimToSize();
+
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private void appendRow(Cursor cursor) {
+        final int row = mRowCount;
+        ensureCapacity(row + 1);
+
+        for (int i = 0; i < mColumnTypes.length; i++) {
+            if (cursor.isNull(i)) {
+                if (mNulls[i] == null) {
+                    mNulls[i] = new BitSet();
+                }
+                mNulls[i].set(row);
+                continue;
+            }
+
+            switch (mColumnTypes[i]) {
+                case LONG:
+                    ((long[]) mColumns[i])[row] = cursor.getLong(i);
+                    break;
+                case DOUBLE:
+                    ((double[]) mColumns[i])[row] = cursor.getDouble(i);
+                    break;
+                case INT:
+                    ((int[]) mColumns[i])[row] = cursor.getInt(i);
+                    break;
+                case STRING:
+                    ((String[]) mColumns[i])[row] = cursor.getString(i);
+                    break;
+            }
+        }
+
+        mRowCount++;
+    }
+
+    /**
+     * Cursor.getCount()已经给出行数,正常情况下不会扩容;行数不准确时按1.5倍扩容
+     */
+    private void ensureCapacity(int capacity) {
+        for (int i = 0; i < mColumns.length; i++) {
+            final int length = Array.getLength(mColumns[i]);
+            if (length < capacity) {
+                mColumns[i] = resize(mColumnTypes[i], mColumns[i], Math.max(capacity, length + (length >> 1)));
+            }
+        }
+    }
+
+    private void trimToSize() {
+        for (int i = 0; i < mColumns.length; i++) {
+            if (Array.getLength(mColumns[i]) != mRowCount) {
+                mColumns[i] = resize(mColumnTypes[i], mColumns[i], mRowCount);
+            }
+        }
+    }
+
+    private Object getColumn(int column, ColumnType type) {
+        if (mColumnTypes[column] != type) {
+            throw new IllegalArgumentException("Column " + mColumnNames[column] + " is "
+                    + mColumnTypes[column] + ", not " + type);
+        }
+        return mColumns[column];
+    }
+
+    private static Object newArray(ColumnType type, int length) {
+        switch (type) {
+            case LONG:
+                return new long[length];
+            case DOUBLE:
+                return new double[length];
+            case INT:
+                return new int[length];
+            default:
+                return new String[length];
+        }
+    }
+
+    /**
+     * 不使用Arrays.copyOf(),它在API 9才加入
+     */
+    private static Object resize(ColumnType type, Object array, int length) {
+        final Object resized = newArray(type, length);
+        System.arraycopy(array, 0, resized, 0, Math.min(Array.getLength(array), length));
+        return resized;
+    }
+}
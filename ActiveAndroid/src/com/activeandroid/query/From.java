@@ -1,17 +1,27 @@
 package com.activeandroid.query;
 
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 
 import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.ColumnMapping;
+import com.activeandroid.Lazy;
 import com.activeandroid.Model;
-import com.activeandroid.content.ContentProvider;
+import com.activeandroid.TableInfo;
 import com.activeandroid.query.Join.JoinType;
 import com.activeandroid.util.Log;
 import com.activeandroid.util.SQLiteUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 public final class From implements Sqlable {
     /**
@@ -34,6 +44,11 @@ public final class From implements Sqlable {
      */
     private List<Join> mJoins;
 
+    /**
+     * include()声明的关联表
+     */
+    private final List<Include> mIncludes = new ArrayList<Include>();
+
     /**
      * WHERE从句
      */
@@ -134,6 +149,26 @@ public final class From implements Sqlable {
         return join;
     }
 
+    /**
+     * 在同一条查询中加载关联的实体,foreignKey是主表中引用type的外键列,或者type中引用主表的外键列.
+     * 例如: new Select().from(Student.class).include(Clazz.class, "classId")
+     *      new Select().from(Clazz.class).include(Student.class, "classId")
+     * 前者每个Student的classId成员直接赋值为JOIN得到的Clazz;
+     * 后者按Clazz分组缓存JOIN得到的Student,之后在Clazz中调用getMany(Student.class, "classId")不再查询.
+     *
+     * 关联表通过LEFT JOIN连接,一对多时LIMIT和OFFSET限制的是JOIN之后的行数.
+     * 一对多的查询带有LIMIT、OFFSET、GROUP BY、HAVING,或者WHERE和JOIN条件引用了关联表(别名__i序号)时,
+     * 读到的子实体可能不完整,这时只返回子实体,不缓存为getMany()的结果.
+     */
+    public From include(Class<? extends Model> type, String foreignKey) {
+        if (!(mQueryBase instanceof Select)) {
+            throw new IllegalStateException("include() can only be used with Select.");
+        }
+
+        mIncludes.add(new Include(mType, type, foreignKey, mIncludes.size()));
+        return this;
+    }
+
     /**
      * Where从句
      */
@@ -261,6 +296,16 @@ public final class From implements Sqlable {
         }
     }
 
+    /**
+     * 拼接include()的LEFT JOIN语句
+     */
+    private void addIncludes(final StringBuilder sql) {
+        final String rootIdName = Cache.getTableInfo(mType).getIdName();
+        for (final Include include : mIncludes) {
+            sql.append(include.toJoinSql(getRootTable(), rootIdName));
+        }
+    }
+
     /**
      * 拼接WHERE语句
      */
@@ -345,11 +390,33 @@ public final class From implements Sqlable {
      */
     @Override
     public String toSql() {
-        final StringBuilder sql = new StringBuilder();
-        sql.append(mQueryBase.toSql());
+        if (mIncludes.isEmpty()) {
+            return toSql(mQueryBase.toSql());
+        }
 
+        final StringBuilder columns = new StringBuilder();
+        if (((Select) mQueryBase).hasColumns()) {
+            // 指定了列时也选出主表主键,processIncludes()按主键合并同一个主表实体的多行
+            columns.append(getRootTable()).append(".").append(Cache.getTableInfo(mType).getIdName());
+        }
+        for (final Include include : mIncludes) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(include.toColumnsSql());
+        }
+        return toSql(((Select) mQueryBase).toSql(getRootTable(), columns.toString()));
+    }
+
+    /**
+     * 在SELECT部分之后拼接FROM、JOIN、WHERE等语句
+     */
+    private String toSql(String select) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append(select);
         addFrom(sql);
         addJoins(sql);
+        addIncludes(sql);
         addWhere(sql);
         addGroupBy(sql);
         addHaving(sql);
@@ -360,6 +427,47 @@ public final class From implements Sqlable {
         return sqlString(sql);
     }
 
+    /**
+     * 生成查询主键的SQL,用于Delete的execute()和executeSingle().first为true时只查询第一行.
+     */
+    private String toIdSql(boolean first) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+        sql.append(getRootTable());
+        sql.append(".").append(Cache.getTableInfo(mType).getIdName()).append(" ");
+
+        addFrom(sql);
+        addJoins(sql);
+        addWhere(sql);
+        addGroupBy(sql);
+        addHaving(sql);
+        addOrderBy(sql);
+        if (first) {
+            sql.append("LIMIT 1 ");
+        } else {
+            addLimit(sql);
+        }
+        addOffset(sql);
+
+        return sqlString(sql);
+    }
+
+    /**
+     * 执行toIdSql()生成的查询,返回所有主键
+     */
+    private long[] queryIds(String sql) {
+        final Cursor cursor = Cache.openDatabase().rawQuery(sql, getArguments());
+        try {
+            final long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
     public String toExistsSql() {
 
         final StringBuilder sql = new StringBuilder();
@@ -394,34 +502,309 @@ public final class From implements Sqlable {
         return sqlString(sql);
     }
 
+    /**
+     * 生成只返回一个聚合值的SQL
+     */
+    private String toAggregateSql(String expression) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(expression).append(" ");
+
+        addFrom(sql);
+        addJoins(sql);
+        addWhere(sql);
+
+        return sqlString(sql);
+    }
+
+    private Cursor queryGroups(String expression) {
+        if (mGroupBy == null) {
+            throw new IllegalStateException("Call groupBy() before aggregating by group.");
+        }
+
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(mGroupBy).append(", ").append(expression).append(" ");
+
+        addFrom(sql);
+        addJoins(sql);
+        addWhere(sql);
+        addGroupBy(sql);
+        addHaving(sql);
+        addOrderBy(sql);
+
+        return Cache.openDatabase().rawQuery(sqlString(sql), getArguments());
+    }
+
     /**
      * 执行SQL语句
      */
     public <T extends Model> List<T> execute() {
         if (mQueryBase instanceof Select) {
+            if (!mIncludes.isEmpty()) {
+                return executeWithIncludes();
+            }
             return SQLiteUtils.rawQuery(mType, toSql(), getArguments());
 
         } else {
-            SQLiteUtils.execSql(toSql(), getArguments());
-            Cache.getContext().getContentResolver().notifyChange(ContentProvider.createUri(mType, null), null);
+            // 在同一个事务中先用相同的条件查询要删除的主键,只从Cache中移除这些实体
+            final SQLiteDatabase db = Cache.openDatabase();
+            final long[] ids;
+            db.beginTransaction();
+            try {
+                ids = queryIds(toIdSql(false));
+                SQLiteUtils.execSql(toSql(), getArguments());
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            Cache.removeEntities(mType, ids);
+            Cache.getNotificationDispatcher().notifyChange(mType, null);
             return null;
 
         }
     }
 
+    /**
+     * 把查询结果映射为type对象的列表,不创建Model,也不读写Cache.
+     * 每一列按列名赋值给type中同名的成员,见Projection.
+     *
+     * 例如: new Select("name", "score").from(Item.class).executeAs(ItemSummary.class)
+     *
+     * 没有指定选择的列时,只选出主表中和type成员同名的列,而不是SELECT *.
+     */
+    public <R> List<R> executeAs(Class<R> type) {
+        checkProjection("executeAs()");
+
+        final String sql;
+        if (((Select) mQueryBase).hasColumns()) {
+            sql = toSql();
+        } else {
+            sql = toSql(((Select) mQueryBase).toSql(getProjectionColumns(type)));
+        }
+
+        final Cursor cursor = Cache.openDatabase().rawQuery(sql, getArguments());
+        try {
+            return mapRows(cursor, new Projection<R>(type, cursor.getColumnNames()));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 用mapper把查询结果的每一行转换为R,不创建Model,也不读写Cache
+     */
+    public <R> List<R> execute(RowMapper<R> mapper) {
+        checkProjection("execute(RowMapper)");
+
+        final Cursor cursor = Cache.openDatabase().rawQuery(toSql(), getArguments());
+        try {
+            return mapRows(cursor, mapper);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 把查询结果的每一行读取为Object[],第i列按columnTypes[i]读取,NULL为null.
+     * columnTypes的个数应和选择的列数相同,例如:
+     * new Select("name", "COUNT(*)").from(Item.class).groupBy("name").executeTuples(String.class, int.class)
+     */
+    public List<Object[]> executeTuples(final Class<?>... columnTypes) {
+        final ColumnInfo.ValueType[] valueTypes = new ColumnInfo.ValueType[columnTypes.length];
+        for (int i = 0; i < columnTypes.length; i++) {
+            valueTypes[i] = Projection.getValueType(columnTypes[i]);
+        }
+
+        return execute(new RowMapper<Object[]>() {
+            @Override
+            public Object[] mapRow(Cursor cursor) {
+                return Projection.readTuple(cursor, valueTypes, columnTypes);
+            }
+        });
+    }
+
+    /**
+     * 按列读取查询结果,第i列按columnTypes[i]读取到基本类型数组中,见ColumnarResult.
+     * 例如: new Select("timestamp", "value").from(Sample.class).orderBy("timestamp")
+     *          .executeColumnar(ColumnType.LONG, ColumnType.DOUBLE)
+     */
+    public ColumnarResult executeColumnar(ColumnarResult.ColumnType... columnTypes) {
+        checkProjection("executeColumnar()");
+
+        final Cursor cursor = Cache.openDatabase().rawQuery(toSql(), getArguments());
+        try {
+            return ColumnarResult.read(cursor, columnTypes);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 逐行遍历查询结果,不一次性创建所有Model.读取的Model会放入Cache,遍历结束前退出时需要调用close().
+     */
+    public <T extends Model> ModelIterator<T> iterate() {
+        return iterate(true, false);
+    }
+
+    /**
+     * 逐行遍历查询结果,见ModelIterator
+     *
+     * @param useCache      是否复用Cache中的实体并把读取的Model放入Cache,扫描大表时应为false.
+     *                      为false时批量预取的外键实体也不放入Cache
+     * @param reuseInstance 是否每一行都读取到同一个Model对象中
+     */
+    public <T extends Model> ModelIterator<T> iterate(boolean useCache, boolean reuseInstance) {
+        if (!(mQueryBase instanceof Select)) {
+            throw new IllegalStateException("iterate() can only be used with Select.");
+        }
+        if (!mIncludes.isEmpty()) {
+            throw new IllegalStateException("iterate() does not support include().");
+        }
+
+        final Cursor cursor = Cache.openDatabase().rawQuery(toSql(), getArguments());
+        return new ModelIterator<T>(mType, cursor, useCache, reuseInstance);
+    }
+
+    public <T extends Model> void forEach(ModelIterator.Callback<T> callback) {
+        forEach(callback, true, false);
+    }
+
+    /**
+     * 逐行回调查询结果,回调返回false时提前结束.参数含义和iterate(useCache, reuseInstance)相同.
+     */
+    public <T extends Model> void forEach(ModelIterator.Callback<T> callback, boolean useCache,
+            boolean reuseInstance) {
+        final ModelIterator<T> iterator = iterate(useCache, reuseInstance);
+        try {
+            while (iterator.hasNext()) {
+                if (!callback.onNext(iterator.next())) {
+                    break;
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * 按keyColumns升序分页查询,见page(token, pageSize, descending, keyColumns)
+     */
+    public <T extends Model> Page<T> page(String token, int pageSize, String... keyColumns) {
+        return page(token, pageSize, false, keyColumns);
+    }
+
+    /**
+     * 按keyColumns和主键分页查询(keyset pagination).
+     * 下一页的查询条件是"排序列和主键在上一页最后一行之后",查询代价和翻到第几页无关,不像OFFSET一样线性增长.
+     *
+     * 例如: new Select().from(Item.class).page(null, 20, true, "created")
+     *      生成 ... ORDER BY Item.created DESC, Item.Id DESC LIMIT 21,
+     *      之后传入上一页的getContinuationToken(),在WHERE中追加(created, Id) < (?, ?)的展开形式.
+     *
+     * 排序列必须是NOT NULL的普通列,并且有以它们为前缀的索引(Column注解的index、indexGroups、unique或uniqueGroups),
+     * 否则每一页都要全表排序.调用时会忽略orderBy()、limit()和offset().
+     *
+     * @param token      上一页的continuationToken,查询第一页时为null
+     * @param pageSize   每页的行数,至少为1
+     * @param keyColumns 排序列,不包括主键.为空时只按主键分页.
+     * @throws IllegalArgumentException pageSize小于1
+     * @throws IllegalStateException 没有支持按keyColumns排序的索引
+     */
+    public <T extends Model> Page<T> page(String token, int pageSize, boolean descending, String... keyColumns) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize < 1");
+        }
+        if (!(mQueryBase instanceof Select)) {
+            throw new IllegalStateException("page() can only be used with Select.");
+        }
+        if (!mIncludes.isEmpty()) {
+            throw new IllegalStateException("page() does not support include().");
+        }
+
+        final TableInfo tableInfo = Cache.getTableInfo(mType);
+        if (!tableInfo.hasIndex(keyColumns)) {
+            throw new IllegalStateException("No index on " + tableInfo.getTableName() + "("
+                    + TextUtils.join(", ", keyColumns) + "). Declare one with @Column(index = true) or indexGroups.");
+        }
+
+        final ColumnInfo[] keys = new ColumnInfo[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keys[i] = findColumn(tableInfo, keyColumns[i]);
+        }
+
+        // 排序列之后总是加上主键,保证排序唯一
+        final String rootTable = getRootTable();
+        final String[] ordering = new String[keyColumns.length + 1];
+        for (int i = 0; i < keyColumns.length; i++) {
+            ordering[i] = rootTable + "." + keyColumns[i];
+        }
+        ordering[keyColumns.length] = rootTable + "." + tableInfo.getIdName();
+
+        final List<String> arguments = new ArrayList<String>();
+        Collections.addAll(arguments, getArguments());
+
+        final StringBuilder sql = new StringBuilder();
+        sql.append(mQueryBase.toSql());
+        addFrom(sql);
+        addJoins(sql);
+
+        String seek = null;
+        if (token != null) {
+            final List<String> values = Page.decodeToken(token, ordering.length);
+            seek = createSeekCondition(ordering, values, descending, arguments);
+        }
+        if (mWhere.length() > 0 && seek != null) {
+            sql.append("WHERE (").append(mWhere).append(") AND (").append(seek).append(") ");
+        } else if (mWhere.length() > 0) {
+            sql.append("WHERE ").append(mWhere).append(" ");
+        } else if (seek != null) {
+            sql.append("WHERE ").append(seek).append(" ");
+        }
+
+        addGroupBy(sql);
+        addHaving(sql);
+
+        sql.append("ORDER BY ");
+        for (int i = 0; i < ordering.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(ordering[i]).append(descending ? " DESC" : " ASC");
+        }
+        // 多查询一行,判断是否还有下一页
+        sql.append(" LIMIT ").append(pageSize + 1);
+
+        final List<T> items = SQLiteUtils.rawQuery(mType, sql.toString(),
+                arguments.toArray(new String[arguments.size()]));
+
+        String nextToken = null;
+        if (items.size() > pageSize) {
+            items.subList(pageSize, items.size()).clear();
+            nextToken = Page.encodeToken(getKeyValues(items.get(pageSize - 1), keys));
+        }
+
+        return new Page<T>(items, nextToken);
+    }
+
     /**
      * 指定带LIMIT 1的SQL语句
      */
     public <T extends Model> T executeSingle() {
         if (mQueryBase instanceof Select) {
+            if (!mIncludes.isEmpty()) {
+                // 一对多时一个主表实体对应多行,不能只取第一行
+                if (!hasToManyInclude()) {
+                    limit(1);
+                }
+                final List<T> results = executeWithIncludes();
+                return results.isEmpty() ? null : results.get(0);
+            }
+
             limit(1);
             return (T) SQLiteUtils.rawQuerySingle(mType, toSql(), getArguments());
 
         } else {
-            //limit(1);
-            Model model = SQLiteUtils.rawQuerySingle(mType, toSql(), getArguments());
-            if (model != null) {
-                model.delete();
+            // 只查询第一行的主键,不加载Model
+            final Long id = SQLiteUtils.longQuery(toIdSql(true), getArguments());
+            if (id != null) {
+                Model.deleteAll(mType, new long[]{id});
             }
             return null;
 
@@ -444,6 +827,109 @@ public final class From implements Sqlable {
         return SQLiteUtils.intQuery(toCountSql(), getArguments());
     }
 
+    /**
+     * column的总和,没有行时为0
+     */
+    public double sum(String column) {
+        return aggregate(Aggregate.SUM, column);
+    }
+
+    /**
+     * 整数列的总和,没有行时为0
+     */
+    public long sumLong(String column) {
+        return aggregateLong(Aggregate.SUM, column, 0);
+    }
+
+    /**
+     * column的平均值,没有行时为NaN
+     */
+    public double avg(String column) {
+        return aggregate(Aggregate.AVG, column);
+    }
+
+    /**
+     * column的最小值,没有行时为NaN
+     */
+    public double min(String column) {
+        return aggregate(Aggregate.MIN, column);
+    }
+
+    public long minLong(String column, long defaultValue) {
+        return aggregateLong(Aggregate.MIN, column, defaultValue);
+    }
+
+    /**
+     * column的最大值,没有行时为NaN
+     */
+    public double max(String column) {
+        return aggregate(Aggregate.MAX, column);
+    }
+
+    public long maxLong(String column, long defaultValue) {
+        return aggregateLong(Aggregate.MAX, column, defaultValue);
+    }
+
+    public int countDistinct(String column) {
+        return (int) aggregateLong(Aggregate.COUNT_DISTINCT, column, 0);
+    }
+
+    /**
+     * 对满足WHERE条件的所有行计算聚合值,结果为NULL时返回NaN.
+     * 从只有一行的Cursor中读取结果,不创建Model.忽略groupBy()、orderBy()、limit()和offset().
+     */
+    public double aggregate(Aggregate aggregate, String column) {
+        return SQLiteUtils.doubleQuery(toAggregateSql(aggregate.toSql(column, false)), getArguments());
+    }
+
+    /**
+     * 按整数计算聚合值,结果为NULL时返回defaultValue
+     */
+    public long aggregateLong(Aggregate aggregate, String column, long defaultValue) {
+        final String expression = "COALESCE(" + aggregate.toSql(column, true) + ", " + defaultValue + ")";
+        final Long value = SQLiteUtils.longQuery(toAggregateSql(expression), getArguments());
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * 按groupBy()指定的一列分组计算聚合值,返回分组的值到聚合值的映射,顺序和orderBy()一致.
+     * 聚合值为NULL的分组对应NaN.
+     *
+     * 例如: new Select().from(Sample.class).groupBy("sensor").aggregateByGroup(Aggregate.AVG, "value")
+     */
+    public Map<String, Double> aggregateByGroup(Aggregate aggregate, String column) {
+        final Map<String, Double> results = new LinkedHashMap<String, Double>();
+        final Cursor cursor = queryGroups(aggregate.toSql(column, false));
+        try {
+            while (cursor.moveToNext()) {
+                results.put(cursor.getString(0), cursor.isNull(1) ? Double.NaN : cursor.getDouble(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return results;
+    }
+
+    /**
+     * 按整数分组计算聚合值,聚合值为NULL的分组不包含在结果中
+     */
+    public Map<String, Long> aggregateLongByGroup(Aggregate aggregate, String column) {
+        final Map<String, Long> results = new LinkedHashMap<String, Long>();
+        final Cursor cursor = queryGroups(aggregate.toSql(column, true));
+        try {
+            while (cursor.moveToNext()) {
+                if (!cursor.isNull(1)) {
+                    results.put(cursor.getString(0), cursor.getLong(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return results;
+    }
+
     public String[] getArguments() {
         final int size = mArguments.size();
         final String[] args = new String[size];
@@ -454,4 +940,332 @@ public final class From implements Sqlable {
 
         return args;
     }
+
+    /**
+     * 主表在SQL中的名称,设置了别名时为别名
+     */
+    private String getRootTable() {
+        return mAlias != null ? mAlias : Cache.getTableName(mType);
+    }
+
+    private boolean hasToManyInclude() {
+        for (final Include include : mIncludes) {
+            if (include.isToMany()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一对多的include()是否读到了每个主表实体的全部子实体,只有这时才能缓存为getMany()的结果.
+     * LIMIT、OFFSET截断了JOIN之后的行,GROUP BY和HAVING合并了行,WHERE和JOIN中引用关联表的条件过滤了子实体.
+     */
+    private boolean isCompleteToMany(Include include) {
+        if (mLimit != null || mOffset != null || mGroupBy != null || mHaving != null) {
+            return false;
+        }
+        if (include.isReferencedBy(mWhere.toString())) {
+            return false;
+        }
+        for (final Join join : mJoins) {
+            if (include.isReferencedBy(join.toSql())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private <T extends Model> List<T> executeWithIncludes() {
+        // 在查询之前读取关联表的版本,查询期间的写入会使缓存的子实体列表失效
+        final int[] versions = new int[mIncludes.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = mIncludes.get(i).getTableInfo().getVersion();
+        }
+
+        final Cursor cursor = Cache.openDatabase().rawQuery(toSql(), getArguments());
+        try {
+            return processIncludes(cursor, versions);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 一次遍历Cursor,每一行读取主表实体和每个关联表的实体.
+     * 同一个实体在多行中重复出现时只读取一次,已经在Cache中的实体直接复用.
+     * 已读取的实体同时作为当前线程的预取实体,外键列从中取值,表的缓存方式为disabled()或者实体已被淘汰时也不会逐行查询.
+     *
+     * @param versions 查询之前每个关联表的版本,用于缓存一对多的子实体列表
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Model> List<T> processIncludes(Cursor cursor, int[] versions) {
+        final Map<Long, T> roots = new LinkedHashMap<Long, T>();
+        if (!cursor.moveToFirst()) {
+            return new ArrayList<T>();
+        }
+
+        final Map<Class<? extends Model>, Map<Long, Model>> prefetched =
+                new HashMap<Class<? extends Model>, Map<Long, Model>>();
+        final Map<Long, Model> prefetchedRoots = getPrefetched(prefetched, mType);
+
+        final String[] columnNames = cursor.getColumnNames();
+        final ColumnMapping rootMapping = Cache.getTableInfo(mType).getColumnMapping(columnNames);
+        final int size = mIncludes.size();
+        final ColumnMapping[] mappings = new ColumnMapping[size];
+        final List<Map<Long, Model>> loaded = new ArrayList<Map<Long, Model>>(size);
+        final List<Map<Long, LinkedHashSet<Model>>> children = new ArrayList<Map<Long, LinkedHashSet<Model>>>(size);
+        for (int i = 0; i < size; i++) {
+            final Include include = mIncludes.get(i);
+            mappings[i] = include.getTableInfo().createColumnMapping(columnNames, include.getColumnPrefix());
+            loaded.add(getPrefetched(prefetched, include.getType()));
+            children.add(new HashMap<Long, LinkedHashSet<Model>>());
+        }
+
+        final Map<Class<? extends Model>, Map<Long, Model>> previous = SQLiteUtils.withPrefetchedEntities(prefetched);
+        try {
+            readIncludedRows(cursor, rootMapping, mappings, roots, prefetchedRoots, loaded, children);
+        } finally {
+            SQLiteUtils.withPrefetchedEntities(previous);
+        }
+
+        for (int i = 0; i < size; i++) {
+            final Include include = mIncludes.get(i);
+            if (!include.isToMany() || !isCompleteToMany(include)) {
+                continue;
+            }
+            for (Map.Entry<Long, LinkedHashSet<Model>> entry : children.get(i).entrySet()) {
+                Cache.putRelation(roots.get(entry.getKey()), include.getType(), include.getForeignKey(),
+                        new ArrayList<Model>(entry.getValue()), versions[i]);
+            }
+        }
+
+        return new ArrayList<T>(roots.values());
+    }
+
+    /**
+     * processIncludes()中逐行读取主表实体和关联实体,读取的实体加入roots、prefetchedRoots和loaded,
+     * 一对多的子实体按主表主键加入children
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Model> void readIncludedRows(Cursor cursor, ColumnMapping rootMapping,
+            ColumnMapping[] mappings, Map<Long, T> roots, Map<Long, Model> prefetchedRoots,
+            List<Map<Long, Model>> loaded, List<Map<Long, LinkedHashSet<Model>>> children) {
+        final int size = mIncludes.size();
+        final int rootIdIndex = rootMapping.getIdIndex();
+        do {
+            // 一对一的关联实体先读取,主表读取外键列时从预取实体中取到,不再单独查询
+            final Model[] related = new Model[size];
+            for (int i = 0; i < size; i++) {
+                if (!mIncludes.get(i).isToMany()) {
+                    related[i] = loadIncluded(cursor, mIncludes.get(i), mappings[i], loaded.get(i));
+                }
+            }
+
+            final long rootId = cursor.getLong(rootIdIndex);
+            T root = roots.get(rootId);
+            if (root == null) {
+                root = (T) Cache.getEntity(mType, rootId);
+                if (root == null) {
+                    root = (T) newInstance(mType);
+                }
+                root.loadFromCursor(cursor, rootMapping);
+                roots.put(rootId, root);
+                // 一对多的子实体读取指向主表的外键时直接取到
+                prefetchedRoots.put(rootId, root);
+            }
+
+            for (int i = 0; i < size; i++) {
+                final Include include = mIncludes.get(i);
+                if (!include.isToMany()) {
+                    if (related[i] != null) {
+                        setReference(root, include.getForeignKeyColumn(), related[i]);
+                    }
+                    continue;
+                }
+
+                LinkedHashSet<Model> group = children.get(i).get(rootId);
+                if (group == null) {
+                    group = new LinkedHashSet<Model>();
+                    children.get(i).put(rootId, group);
+                }
+
+                final Model child = loadIncluded(cursor, include, mappings[i], loaded.get(i));
+                if (child != null) {
+                    setReference(child, include.getForeignKeyColumn(), root);
+                    group.add(child);
+                }
+            }
+        }
+        while (cursor.moveToNext());
+    }
+
+    /**
+     * prefetched中type的实体,没有时创建.同一张表的主表实体和关联实体共用一个Map
+     */
+    private static Map<Long, Model> getPrefetched(Map<Class<? extends Model>, Map<Long, Model>> prefetched,
+            Class<? extends Model> type) {
+        Map<Long, Model> entities = prefetched.get(type);
+        if (entities == null) {
+            entities = new HashMap<Long, Model>();
+            prefetched.put(type, entities);
+        }
+        return entities;
+    }
+
+    /**
+     * 读取当前行中关联表的实体,LEFT JOIN没有匹配的行时返回null
+     */
+    private static Model loadIncluded(Cursor cursor, Include include, ColumnMapping mapping,
+            Map<Long, Model> loaded) {
+        final int idIndex = mapping.getIdIndex();
+        if (idIndex < 0 || cursor.isNull(idIndex)) {
+            return null;
+        }
+
+        final long id = cursor.getLong(idIndex);
+        Model entity = loaded.get(id);
+        if (entity == null) {
+            entity = Cache.getEntity(include.getType(), id);
+            if (entity == null) {
+                entity = newInstance(include.getType());
+            }
+            entity.loadFromCursor(cursor, mapping);
+            loaded.put(id, entity);
+        }
+
+        return entity;
+    }
+
+    private static void setReference(Model model, ColumnInfo column, Model value) {
+        try {
+            column.getField().set(model, column.isLazy() ? Lazy.of(value) : value);
+        } catch (IllegalAccessException e) {
+            Log.e(e.getClass().getName(), e);
+        }
+    }
+
+    private static Model newInstance(Class<? extends Model> type) {
+        try {
+            return type.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Your model " + type.getName() + " does not define a default constructor.", e);
+        }
+    }
+
+    /**
+     * 展开(c1, c2, ..., Id) > (?, ?, ..., ?):
+     * c1 >= ? AND ((c1 > ?) OR (c1 = ? AND c2 > ?) OR ...) 低于API 26的SQLite不支持行值比较,所以需要展开.
+     * 单独的OR没有可以用于索引范围查找的条件,SQLite只能从索引开头扫描并过滤,代价随页数增长;
+     * 前面AND上第一列的范围条件,每一页都直接从索引中上一页结束的位置开始.降序时比较方向相反.
+     */
+    private static String createSeekCondition(String[] ordering, List<String> values, boolean descending,
+            List<String> arguments) {
+        final String operator = descending ? "<" : ">";
+        final StringBuilder condition = new StringBuilder();
+        if (ordering.length > 1) {
+            condition.append(ordering[0]).append(" ").append(operator).append("= ? AND (");
+            arguments.add(values.get(0));
+        }
+        for (int i = 0; i < ordering.length; i++) {
+            if (i > 0) {
+                condition.append(" OR ");
+            }
+            condition.append("(");
+            for (int j = 0; j < i; j++) {
+                condition.append(ordering[j]).append(" = ? AND ");
+                arguments.add(values.get(j));
+            }
+            condition.append(ordering[i]).append(" ").append(operator).append(" ?)");
+            arguments.add(values.get(i));
+        }
+        if (ordering.length > 1) {
+            condition.append(")");
+        }
+
+        return condition.toString();
+    }
+
+    private static ColumnInfo findColumn(TableInfo tableInfo, String name) {
+        for (ColumnInfo column : tableInfo.getColumns()) {
+            if (column.getName().equals(name)) {
+                return column;
+            }
+        }
+
+        throw new IllegalArgumentException(tableInfo.getTableName() + " has no column " + name);
+    }
+
+    /**
+     * 读取model的排序列和主键,转换为和getArguments()相同的字符串参数
+     */
+    private static List<String> getKeyValues(Model model, ColumnInfo[] keys) {
+        final List<String> values = new ArrayList<String>(keys.length + 1);
+        for (ColumnInfo key : keys) {
+            final Object value;
+            try {
+                value = key.getSnapshotValue(model);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+
+            if (value == null) {
+                throw new IllegalStateException("Page key column " + key.getName() + " is NULL in " + model);
+            } else if (value instanceof Boolean) {
+                values.add(((Boolean) value) ? "1" : "0");
+            } else if (value instanceof Float) {
+                // 按列中实际保存的double值比较
+                values.add(Double.toString(((Float) value).doubleValue()));
+            } else if (value instanceof Number || value instanceof String || value instanceof Character) {
+                values.add(value.toString());
+            } else {
+                throw new IllegalArgumentException("Column " + key.getName() + " can't be used as a page key.");
+            }
+        }
+        values.add(model.getId().toString());
+
+        return values;
+    }
+
+    private void checkProjection(String method) {
+        if (!(mQueryBase instanceof Select)) {
+            throw new IllegalStateException(method + " can only be used with Select.");
+        }
+        if (!mIncludes.isEmpty()) {
+            throw new IllegalStateException(method + " does not support include().");
+        }
+    }
+
+    /**
+     * 选择主表中和type成员同名的列
+     */
+    private String[] getProjectionColumns(Class<?> type) {
+        final TableInfo tableInfo = Cache.getTableInfo(mType);
+        final String rootTable = getRootTable();
+        final List<String> columns = new ArrayList<String>();
+        for (String name : Projection.getColumnNames(type)) {
+            for (ColumnInfo column : tableInfo.getColumns()) {
+                if (column.getName().equalsIgnoreCase(name)) {
+                    columns.add(rootTable + "." + column.getName());
+                    break;
+                }
+            }
+        }
+
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException(type.getName() + " has no field matching a column of "
+                    + tableInfo.getTableName());
+        }
+
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    private static <R> List<R> mapRows(Cursor cursor, RowMapper<R> mapper) {
+        final List<R> rows = new ArrayList<R>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            rows.add(mapper.mapRow(cursor));
+        }
+        return rows;
+    }
 }
@@ -0,0 +1,158 @@
+package com.activeandroid.query;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+
+import java.util.Locale;
+
+/**
+ * From.include()声明的一个关联表,负责生成带别名的列和JOIN语句.
+ *
+ * 1. 一对一:主表的foreignKey列引用关联表,每一行读取关联的实体并赋值给主表的外键成员.
+ * 2. 一对多:关联表的foreignKey列引用主表,每一行读取一个子实体,按主表实体分组后缓存到Cache,
+ *    之后主表实体调用getMany()直接返回缓存的列表.查询读到的子实体不完整时不缓存,见From.isCompleteToMany().
+ *
+ * 关联表的每一列以"__i序号_"为前缀选出,不会和主表或其他关联表的同名列冲突.
+ */
+final class Include {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final Class<? extends Model> mType;
+    private final String mForeignKey;
+    private final TableInfo mTableInfo;
+
+    /**
+     * 关联表在SQL中的别名,同时也是它的列名前缀
+     */
+    private final String mAlias;
+
+    /**
+     * 外键列:一对一时在主表中,一对多时在关联表中
+     */
+    private final ColumnInfo mForeignKeyColumn;
+    private final boolean mToMany;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    Include(Class<? extends Model> rootType, Class<? extends Model> type, String foreignKey, int index) {
+        mType = type;
+        mForeignKey = foreignKey;
+        mTableInfo = Cache.getTableInfo(type);
+        mAlias = "__i" + index;
+
+        final ColumnInfo toOne = findForeignKey(Cache.getTableInfo(rootType), foreignKey, type);
+        if (toOne != null) {
+            mForeignKeyColumn = toOne;
+            mToMany = false;
+            return;
+        }
+
+        final ColumnInfo toMany = findForeignKey(mTableInfo, foreignKey, rootType);
+        if (toMany != null) {
+            mForeignKeyColumn = toMany;
+            mToMany = true;
+            return;
+        }
+
+        throw new IllegalArgumentException("Neither " + rootType.getSimpleName() + " nor " + type.getSimpleName()
+                + " has a column " + foreignKey + " referencing the other.");
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    Class<? extends Model> getType() {
+        return mType;
+    }
+
+    String getForeignKey() {
+        return mForeignKey;
+    }
+
+    TableInfo getTableInfo() {
+        return mTableInfo;
+    }
+
+    ColumnInfo getForeignKeyColumn() {
+        return mForeignKeyColumn;
+    }
+
+    boolean isToMany() {
+        return mToMany;
+    }
+
+    /**
+     * 关联表的列在Cursor中的列名前缀
+     */
+    String getColumnPrefix() {
+        return mAlias + "_";
+    }
+
+    /**
+     * 生成选择关联表每一列的SQL,例如"__i0.Id AS __i0_Id, __i0.name AS __i0_name"
+     */
+    String toColumnsSql() {
+        final StringBuilder sql = new StringBuilder();
+        for (ColumnInfo column : mTableInfo.getColumns()) {
+            if (sql.length() > 0) {
+                sql.append(", ");
+            }
+            sql.append(mAlias).append(".").append(column.getName());
+            sql.append(" AS ").append(getColumnPrefix()).append(column.getName());
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * sql是否引用了关联表的别名或者带前缀的列名,用于判断WHERE和JOIN条件是否过滤了关联表
+     */
+    boolean isReferencedBy(String sql) {
+        final String lower = sql.toLowerCase(Locale.US);
+        return lower.contains(mAlias + ".") || lower.contains(getColumnPrefix());
+    }
+
+    /**
+     * 生成LEFT JOIN语句,rootTable为主表的表名或别名
+     */
+    String toJoinSql(String rootTable, String rootIdName) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("LEFT JOIN ").append(mTableInfo.getTableName()).append(" AS ").append(mAlias).append(" ON ");
+        if (mToMany) {
+            sql.append(mAlias).append(".").append(mForeignKey);
+            sql.append(" = ").append(rootTable).append(".").append(rootIdName);
+        } else {
+            sql.append(mAlias).append(".").append(mTableInfo.getIdName());
+            sql.append(" = ").append(rootTable).append(".").append(mForeignKey);
+        }
+        sql.append(" ");
+
+        return sql.toString();
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 在tableInfo中查找名为foreignKey、引用target表的外键列(包括Lazy列),不存在时返回null
+     */
+    private static ColumnInfo findForeignKey(TableInfo tableInfo, String foreignKey, Class<? extends Model> target) {
+        for (ColumnInfo column : tableInfo.getColumns()) {
+            if (column.getName().equals(foreignKey)
+                    && column.getValueType() == ColumnInfo.ValueType.MODEL
+                    && column.getSerializedType().equals(target)) {
+                return column;
+            }
+        }
+
+        return null;
+    }
+}
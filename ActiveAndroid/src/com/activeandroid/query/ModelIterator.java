@@ -0,0 +1,213 @@
+package com.activeandroid.query;
+
+import android.database.Cursor;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.ColumnMapping;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+import com.activeandroid.binder.BinderUtils;
+import com.activeandroid.util.Log;
+import com.activeandroid.util.SQLiteUtils;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 基于Cursor的查询结果迭代器,由From.iterate()创建.
+ *
+ * 每次调用next()时才从Cursor读取一行,不会一次性创建所有Model,适合遍历很大的表.
+ * 遍历结束后自动关闭Cursor,提前结束遍历时必须调用close().
+ *
+ * 1. useCache为false时,读取的Model不放入Cache,也不复用Cache中已有的实体.
+ * 2. reuseInstance为true时,每一行都读取到同一个Model对象中(flyweight),next()返回的对象在下一次next()时被覆盖,
+ *    调用方需要保存时应自行拷贝.复用的对象不会放入Cache.
+ * 3. 外键引用的实体每PREFETCH_WINDOW行用IN查询批量预取一次,不会每一行单独查询.
+ *    不使用Cache时预取的实体同样不放入Cache,同一个被引用的实体在不同批次中可能是不同的对象.
+ */
+public final class ModelIterator<T extends Model> implements Iterator<T>, Closeable {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 每次预取外键实体覆盖的行数
+     */
+    private static final int PREFETCH_WINDOW = 256;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC INTERFACES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * From.forEach()的回调,返回false时停止遍历
+     */
+    public interface Callback<T extends Model> {
+        boolean onNext(T model);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final Class<? extends Model> mType;
+    private final Cursor mCursor;
+    private final boolean mUseCache;
+    private final ColumnMapping mMapping;
+
+    /**
+     * 复用的Model对象,没有开启复用时为null
+     */
+    private T mInstance;
+
+    /**
+     * 开启复用时每个ColumnInfo在Cursor中的下标,用于清除这一行为NULL的列
+     */
+    private final int[] mColumnIndexes;
+    private final ColumnInfo[] mColumns;
+
+    /**
+     * Cursor是否已经移动到下一行,以及下一行是否存在
+     */
+    private boolean mAdvanced;
+    private boolean mHasNext;
+    private boolean mClosed;
+
+    /**
+     * 当前批次预取的外键实体,以及这一批之后第一行的位置
+     */
+    private Map<Class<? extends Model>, Map<Long, Model>> mPrefetched;
+    private int mPrefetchEnd = -1;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @SuppressWarnings("unchecked")
+    ModelIterator(Class<? extends Model> type, Cursor cursor, boolean useCache, boolean reuseInstance) {
+        mType = type;
+        mCursor = cursor;
+        mUseCache = useCache && !reuseInstance;
+
+        final TableInfo tableInfo = Cache.getTableInfo(type);
+        final String[] columnNames = cursor.getColumnNames();
+        mMapping = tableInfo.getColumnMapping(columnNames);
+
+        if (reuseInstance) {
+            mInstance = (T) newInstance();
+            mColumns = tableInfo.getColumns();
+            mColumnIndexes = new int[mColumns.length];
+            for (int i = 0; i < mColumns.length; i++) {
+                mColumnIndexes[i] = BinderUtils.getColumnIndex(columnNames, mColumns[i].getName());
+            }
+        } else {
+            mColumns = null;
+            mColumnIndexes = null;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean hasNext() {
+        if (mClosed) {
+            return false;
+        }
+
+        if (!mAdvanced) {
+            mHasNext = mCursor.moveToNext();
+            mAdvanced = true;
+            if (!mHasNext) {
+                close();
+            }
+        }
+
+        return mHasNext;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        mAdvanced = false;
+
+        final int position = mCursor.getPosition();
+        if (position >= mPrefetchEnd) {
+            mPrefetched = SQLiteUtils.prefetchForeignKeys(mType, mCursor, PREFETCH_WINDOW, mUseCache);
+            mPrefetchEnd = position + PREFETCH_WINDOW;
+        }
+
+        final Map<Class<? extends Model>, Map<Long, Model>> previous =
+                SQLiteUtils.withPrefetchedEntities(mPrefetched);
+        try {
+            if (mInstance != null) {
+                clearNullColumns();
+                mInstance.loadFromCursor(mCursor, mMapping, false);
+                return mInstance;
+            }
+
+            Model entity = null;
+            final int idIndex = mMapping.getIdIndex();
+            if (mUseCache && idIndex >= 0) {
+                entity = Cache.getEntity(mType, mCursor.getLong(idIndex));
+            }
+            if (entity == null) {
+                entity = newInstance();
+            }
+
+            entity.loadFromCursor(mCursor, mMapping, mUseCache);
+            return (T) entity;
+        } finally {
+            SQLiteUtils.withPrefetchedEntities(previous);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (!mClosed) {
+            mClosed = true;
+            mCursor.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * loadFromCursor()不修改值为NULL的列,复用对象时需要先清除,否则会留下上一行的值
+     */
+    private void clearNullColumns() {
+        for (int i = 0; i < mColumns.length; i++) {
+            final int index = mColumnIndexes[i];
+            if (index >= 0 && !mColumns[i].isPrimaryKey() && mCursor.isNull(index)) {
+                try {
+                    mColumns[i].clearValue(mInstance);
+                } catch (IllegalAccessException e) {
+                    Log.e(e.getClass().getName(), e);
+                }
+            }
+        }
+    }
+
+    private Model newInstance() {
+        try {
+            return mType.getConstructor().newInstance();
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException("Your model " + mType.getName() + " does not define a default constructor.", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.activeandroid.query;
+
+import com.activeandroid.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * From.page()返回的一页查询结果.
+ *
+ * continuationToken记录了这一页最后一行的排序列和主键,传给下一次page()即可从这一行之后继续查询,
+ * 不需要OFFSET跳过前面的行.token只能用于相同的查询条件和排序列.
+ */
+public final class Page<T extends Model> {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE CONSTANTS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * token中每个值的格式为"长度:值",值本身可以包含任意字符
+     */
+    private static final char LENGTH_SEPARATOR = ':';
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final List<T> mItems;
+    private final String mContinuationToken;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    Page(List<T> items, String continuationToken) {
+        mItems = Collections.unmodifiableList(items);
+        mContinuationToken = continuationToken;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    public List<T> getItems() {
+        return mItems;
+    }
+
+    /**
+     * 查询下一页使用的token,已经是最后一页时返回null
+     */
+    public String getContinuationToken() {
+        return mContinuationToken;
+    }
+
+    public boolean hasMore() {
+        return mContinuationToken != null;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    static String encodeToken(List<String> values) {
+        final StringBuilder token = new StringBuilder();
+        for (String value : values) {
+            token.append(value.length()).append(LENGTH_SEPARATOR).append(value);
+        }
+
+        return token.toString();
+    }
+
+    /**
+     * 解析encodeToken()生成的token
+     *
+     * @throws IllegalArgumentException token格式错误,或者值的个数不是count
+     */
+    static List<String> decodeToken(String token, int count) {
+        final List<String> values = new ArrayList<String>(count);
+        int position = 0;
+        try {
+            while (position < token.length()) {
+                final int separator = token.indexOf(LENGTH_SEPARATOR, position);
+                final int length = Integer.parseInt(token.substring(position, separator));
+                final int start = separator + 1;
+                values.add(token.substring(start, start + length));
+                position = start + length;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed continuation token: " + token, e);
+        }
+
+        if (values.size() != count) {
+            throw new IllegalArgumentException("Continuation token doesn't match the page keys: " + token);
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,250 @@
+package com.activeandroid.query;
+
+import android.database.Cursor;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.ColumnInfo.ValueType;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.serializer.TypeSerializer;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把查询结果映射为普通对象的RowMapper,由From.executeAs()创建.
+ *
+ * 结果类型不需要继承Model,只要有无参构造函数.Cursor中的每一列按列名对应到同名的成员
+ * (或者Column注解指定的name),没有对应成员的列不会被读取.基本类型的成员直接用Field.setInt()等方法赋值,不装箱.
+ * Date、Calendar等有TypeSerializer的成员和Model一样先读取序列化后的值再反序列化.
+ * 类型无法映射的成员(例如Model引用或者没有TypeSerializer的对象)被忽略,不参与映射.
+ * 列值为NULL时成员保持默认值.
+ */
+final class Projection<R> implements RowMapper<R> {
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE MEMBERS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private final Constructor<R> mConstructor;
+
+    /**
+     * 每个需要读取的列在Cursor中的下标,以及对应的成员和读取方式
+     */
+    private final int[] mColumnIndexes;
+    private final Field[] mFields;
+    private final ValueType[] mValueTypes;
+
+    /**
+     * 成员类型对应的TypeSerializer,没有时为null
+     */
+    private final TypeSerializer[] mSerializers;
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTORS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    Projection(Class<R> type, String[] columnNames) {
+        try {
+            mConstructor = type.getDeclaredConstructor();
+            mConstructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " does not define a default constructor.", e);
+        }
+
+        final List<Field> fields = getFields(type);
+        final List<Integer> indexes = new ArrayList<Integer>();
+        final List<Field> matched = new ArrayList<Field>();
+        for (int i = 0; i < columnNames.length; i++) {
+            final Field field = findField(fields, columnNames[i]);
+            if (field != null) {
+                indexes.add(i);
+                matched.add(field);
+            }
+        }
+
+        final int size = matched.size();
+        mColumnIndexes = new int[size];
+        mFields = new Field[size];
+        mValueTypes = new ValueType[size];
+        mSerializers = new TypeSerializer[size];
+        for (int i = 0; i < size; i++) {
+            mColumnIndexes[i] = indexes.get(i);
+            mFields[i] = matched.get(i);
+            mSerializers[i] = Cache.getParserForType(mFields[i].getType());
+            mValueTypes[i] = ValueType.of(getSerializedType(mFields[i], mSerializers[i]));
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public R mapRow(Cursor cursor) {
+        try {
+            final R row = mConstructor.newInstance();
+            for (int i = 0; i < mFields.length; i++) {
+                final int index = mColumnIndexes[i];
+                if (!cursor.isNull(index)) {
+                    setValue(row, mFields[i], mValueTypes[i], mSerializers[i], cursor, index);
+                }
+            }
+            return row;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to map a row into " + mConstructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PACKAGE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * type中可以映射的列名,用于没有指定选择列时只选出这些列
+     */
+    static List<String> getColumnNames(Class<?> type) {
+        final List<String> names = new ArrayList<String>();
+        for (Field field : getFields(type)) {
+            names.add(getColumnName(field));
+        }
+        return names;
+    }
+
+    /**
+     * 按columnTypes逐列读取当前行,返回Object[],用于From.executeTuples()
+     */
+    static Object[] readTuple(Cursor cursor, ValueType[] valueTypes, Class<?>[] columnTypes) {
+        final Object[] tuple = new Object[valueTypes.length];
+        for (int i = 0; i < valueTypes.length; i++) {
+            if (!cursor.isNull(i)) {
+                tuple[i] = readValue(cursor, i, valueTypes[i], columnTypes[i]);
+            }
+        }
+        return tuple;
+    }
+
+    /**
+     * 检查映射的类型是否支持,Model外键列应该映射为long
+     */
+    static ValueType getValueType(Class<?> type) {
+        final ValueType valueType = ValueType.of(type);
+        if (valueType == ValueType.MODEL || valueType == ValueType.UNSUPPORTED) {
+            throw new IllegalArgumentException("Type " + type.getName() + " can't be used in a projection.");
+        }
+        return valueType;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * type及其父类中所有可以赋值、并且类型可以映射的成员
+     */
+    private static List<Field> getFields(Class<?> type) {
+        final List<Field> fields = new ArrayList<Field>();
+        for (Class<?> current = type; current != null && current != Object.class;
+                current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                final int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                if (!isMapped(field)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * 成员的类型有TypeSerializer,或者是除Model之外ColumnInfo可以直接读取的类型
+     */
+    private static boolean isMapped(Field field) {
+        final Class<?> type = getSerializedType(field, Cache.getParserForType(field.getType()));
+        final ValueType valueType = ValueType.of(type);
+        return valueType != ValueType.MODEL && valueType != ValueType.UNSUPPORTED;
+    }
+
+    private static Class<?> getSerializedType(Field field, TypeSerializer serializer) {
+        return serializer != null ? serializer.getSerializedType() : field.getType();
+    }
+
+    private static Field findField(List<Field> fields, String columnName) {
+        for (Field field : fields) {
+            if (getColumnName(field).equalsIgnoreCase(columnName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private static String getColumnName(Field field) {
+        final Column column = field.getAnnotation(Column.class);
+        if (column != null && column.name().length() > 0) {
+            return column.name();
+        }
+        return field.getName();
+    }
+
+    private static void setValue(Object row, Field field, ValueType valueType, TypeSerializer serializer,
+            Cursor cursor, int index) throws IllegalAccessException {
+        if (serializer != null) {
+            final Object value = readValue(cursor, index, valueType, serializer.getSerializedType());
+            field.set(row, serializer.deserialize(value));
+            return;
+        }
+
+        if (!field.getType().isPrimitive()) {
+            field.set(row, readValue(cursor, index, valueType, field.getType()));
+            return;
+        }
+
+        switch (valueType) {
+            case BYTE:
+                field.setByte(row, (byte) cursor.getInt(index));
+                break;
+            case SHORT:
+                field.setShort(row, cursor.getShort(index));
+                break;
+            case INTEGER:
+                field.setInt(row, cursor.getInt(index));
+                break;
+            case LONG:
+                field.setLong(row, cursor.getLong(index));
+                break;
+            case FLOAT:
+                field.setFloat(row, cursor.getFloat(index));
+                break;
+            case DOUBLE:
+                field.setDouble(row, cursor.getDouble(index));
+                break;
+            case BOOLEAN:
+                field.setBoolean(row, cursor.getInt(index) != 0);
+                break;
+            case CHARACTER:
+                field.setChar(row, cursor.getString(index).charAt(0));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Object readValue(Cursor cursor, int index, ValueType valueType, Class<?> type) {
+        if (valueType == ValueType.BLOB && type.equals(Byte[].class)) {
+            final byte[] bytes = cursor.getBlob(index);
+            final Byte[] boxed = new Byte[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                boxed[i] = bytes[i];
+            }
+            return boxed;
+        }
+        return ColumnInfo.readValue(cursor, index, valueType, type);
+    }
+}
@@ -0,0 +1,12 @@
+package com.activeandroid.query;
+
+import android.database.Cursor;
+
+/**
+ * 把查询结果的一行转换为任意对象,用于From.execute(RowMapper).
+ *
+ * mapRow()只能读取Cursor当前行,不能移动Cursor,也不能关闭它.
+ */
+public interface RowMapper<R> {
+    R mapRow(Cursor cursor);
+}
@@ -61,8 +61,34 @@ public final class Select implements Sqlable {
         }
     }
 
+    /**
+     * 是否指定了选择的列
+     */
+    boolean hasColumns() {
+        return mColumns != null && mColumns.length > 0;
+    }
+
+    /**
+     * 生成SELECT部分,没有指定列时选择defaultColumns
+     */
+    String toSql(String[] defaultColumns) {
+        return toSql(hasColumns() ? mColumns : defaultColumns, null, null);
+    }
+
     @Override
     public String toSql() {
+        return toSql(null, null);
+    }
+
+    /**
+     * 生成SELECT部分,在选择的列之后追加extraColumns.
+     * 没有指定列且extraColumns不为空时,选择table的所有列,避免SELECT *选出其他表的同名列.
+     */
+    String toSql(String table, String extraColumns) {
+        return toSql(mColumns, table, extraColumns);
+    }
+
+    private String toSql(String[] columns, String table, String extraColumns) {
         StringBuilder sql = new StringBuilder();
 
         sql.append("SELECT ");
@@ -74,11 +100,18 @@ public final class Select implements Sqlable {
         }
 
         // 如果指定列,则拼接具体的列的名字;否则,使用SELETE *
-        if (mColumns != null && mColumns.length > 0) {
-            sql.append(TextUtils.join(", ", mColumns) + " ");
+        if (columns != null && columns.length > 0) {
+            sql.append(TextUtils.join(", ", columns));
+        } else if (extraColumns != null) {
+            sql.append(table).append(".*");
         } else {
-            sql.append("* ");
+            sql.append("*");
+        }
+
+        if (extraColumns != null) {
+            sql.append(", ").append(extraColumns);
         }
+        sql.append(" ");
 
         return sql.toString();
     }
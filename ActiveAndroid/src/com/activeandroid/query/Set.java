@@ -16,6 +16,7 @@ package com.activeandroid.query;
  * limitations under the License.
  */
 
+import com.activeandroid.Cache;
 import com.activeandroid.util.SQLiteUtils;
 
 import java.util.ArrayList;
@@ -83,6 +84,7 @@ public final class Set implements Sqlable {
 
 	public void execute() {
 		SQLiteUtils.execSql(toSql(), getArguments());
+		Cache.markTableChanged(mUpdate.getType());
 	}
 
 	public String[] getArguments() {
@@ -17,21 +17,28 @@ package com.activeandroid.util;
  */
 
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.text.TextUtils;
 
 import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.ColumnMapping;
 import com.activeandroid.Model;
 import com.activeandroid.TableInfo;
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Column.ConflictAction;
-import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.binder.BinderUtils;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,6 +52,17 @@ public final class SQLiteUtils {
         INTEGER, REAL, TEXT, BLOB
     }
 
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC INTERFACES
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * rawQuery()每次执行查询前的回调,在执行查询的线程上调用,用于调试和统计查询次数
+     */
+    public interface QueryListener {
+        void onQuery(String sql, String[] selectionArgs);
+    }
+
     //////////////////////////////////////////////////////////////////////////////////////
     // PUBLIC CONSTANTS
     //////////////////////////////////////////////////////////////////////////////////////
@@ -80,10 +98,31 @@ public final class SQLiteUtils {
         }
     };
 
+    /**
+     * SQLiteStatement.executeUpdateDelete()从API 11开始提供
+     */
+    private static final boolean UPDATE_DELETE_SUPPORTED =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+    /**
+     * 按主键批量查询时每条IN查询的最大参数个数,SQLite默认最多999个绑定参数
+     */
+    private static final int IN_QUERY_CHUNK_SIZE = 500;
+
     //////////////////////////////////////////////////////////////////////////////////////
     // PRIVATE MEMBERS
     //////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * 当前线程正在处理的查询预取到的外键实体,按类型和主键保存,没有查到的主键对应null.
+     * 由最外层的processCursor()或者prefetchForeignKeys()创建和清除,嵌套的查询共享同一份.
+     * 单独保存一份是因为结果集很大时,LruCache可能在读取到对应行之前就淘汰了预取的实体.
+     */
+    private static final ThreadLocal<Map<Class<? extends Model>, Map<Long, Model>>> sPrefetchedEntities =
+            new ThreadLocal<Map<Class<? extends Model>, Map<Long, Model>>>();
+
+    private static volatile QueryListener sQueryListener;
+
     private static HashMap<String, List<String>> sIndexGroupMap;
     private static HashMap<String, List<String>> sUniqueGroupMap;
     private static HashMap<String, ConflictAction> sOnUniqueConflictsMap;
@@ -92,28 +131,125 @@ public final class SQLiteUtils {
     // PUBLIC METHODS
     //////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * 获取Java类型对应的SQLite类型,外键列为INTEGER,枚举列为TEXT,无法映射时返回null
+     */
+    public static SQLiteType getSQLiteType(Class<?> type) {
+        if (TYPE_MAP.containsKey(type)) {
+            return TYPE_MAP.get(type);
+        } else if (ReflectionUtils.isModel(type)) {
+            return SQLiteType.INTEGER;
+        } else if (ReflectionUtils.isSubclassOf(type, Enum.class)) {
+            return SQLiteType.TEXT;
+        }
+
+        return null;
+    }
+
     public static void execSql(String sql) {
         Cache.openDatabase().execSQL(sql);
     }
 
+    /**
+     * 执行带参数的非查询语句.同样的SQL反复执行时复用Cache中已编译的SQLiteStatement.
+     */
     public static void execSql(String sql, Object[] bindArgs) {
-        Cache.openDatabase().execSQL(sql, bindArgs);
+        executeUpdateDelete(sql, bindArgs);
+    }
+
+    /**
+     * 执行UPDATE/DELETE语句,返回受影响的行数.同样的SQL反复执行时复用Cache中已编译的SQLiteStatement.
+     */
+    public static int executeUpdateDelete(String sql, Object[] bindArgs) {
+        final SQLiteStatement statement = Cache.acquireStatement(sql);
+        try {
+            bindArguments(statement, bindArgs);
+            return executeUpdateDelete(statement);
+        } finally {
+            Cache.releaseStatement(sql, statement);
+        }
+    }
+
+    /**
+     * 执行已经绑定参数的UPDATE/DELETE语句,返回受影响的行数.
+     * API 11之前没有executeUpdateDelete(),改为execute()之后用changes()读取同一连接上一条语句修改的行数.
+     */
+    public static int executeUpdateDelete(SQLiteStatement statement) {
+        if (UPDATE_DELETE_SUPPORTED) {
+            return statement.executeUpdateDelete();
+        }
+
+        statement.execute();
+        final Long changes = longQuery("SELECT changes()", null);
+        return changes != null ? changes.intValue() : 0;
+    }
+
+    /**
+     * 设置加载Model的查询的回调,传入null时取消
+     */
+    public static void setQueryListener(QueryListener listener) {
+        sQueryListener = listener;
     }
 
     public static <T extends Model> List<T> rawQuery(Class<? extends Model> type, String sql, String[] selectionArgs) {
+        return rawQuery(type, sql, selectionArgs, true);
+    }
+
+    /**
+     * 执行查询并读取为Model,useCache为false时不复用Cache中的实体,读取的实体和预取的外键实体都不放入Cache
+     */
+    public static <T extends Model> List<T> rawQuery(Class<? extends Model> type, String sql, String[] selectionArgs,
+            boolean useCache) {
+        final QueryListener listener = sQueryListener;
+        if (listener != null) {
+            listener.onQuery(sql, selectionArgs);
+        }
+
         Cursor cursor = Cache.openDatabase().rawQuery(sql, selectionArgs);
-        List<T> entities = processCursor(type, cursor);
+        List<T> entities = processCursor(type, cursor, useCache);
         cursor.close();
 
         return entities;
     }
 
+    /**
+     * 执行只返回一个整数的查询,例如COUNT和EXISTS.不创建Cursor,复用Cache中已编译的SQLiteStatement.
+     * 查询结果为空时返回0.
+     */
     public static int intQuery(final String sql, final String[] selectionArgs) {
-        final Cursor cursor = Cache.openDatabase().rawQuery(sql, selectionArgs);
-        final int number = processIntCursor(cursor);
-        cursor.close();
+        final Long number = longQuery(sql, selectionArgs);
+        return number != null ? number.intValue() : 0;
+    }
+
+    /**
+     * 执行只返回一个整数的查询,查询结果为空时返回null
+     */
+    public static Long longQuery(final String sql, final Object[] selectionArgs) {
+        final SQLiteStatement statement = Cache.acquireStatement(sql);
+        try {
+            bindArguments(statement, selectionArgs);
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return null;
+        } finally {
+            Cache.releaseStatement(sql, statement);
+        }
+    }
 
-        return number;
+    /**
+     * 执行只返回一个浮点数的查询,查询结果为空或者值为NULL时返回NaN.
+     * 从Cursor中直接读取double,不经过simpleQueryForString()的文本转换,文本只保留15位有效数字会丢失精度.
+     */
+    public static double doubleQuery(final String sql, final String[] selectionArgs) {
+        final Cursor cursor = Cache.openDatabase().rawQuery(sql, selectionArgs);
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return Double.NaN;
+            }
+            return cursor.getDouble(0);
+        } finally {
+            cursor.close();
+        }
     }
 
     public static <T extends Model> T rawQuerySingle(Class<? extends Model> type, String sql, String[] selectionArgs) {
@@ -240,9 +376,9 @@ public final class SQLiteUtils {
     public static String createTableDefinition(TableInfo tableInfo) {
         final ArrayList<String> definitions = new ArrayList<String>();
 
-        for (Field field : tableInfo.getFields()) {
+        for (ColumnInfo column : tableInfo.getColumns()) {
             // 生成每一列的构建语句
-            String definition = createColumnDefinition(tableInfo, field);
+            String definition = createColumnDefinition(tableInfo, column);
             if (!TextUtils.isEmpty(definition)) {
                 definitions.add(definition);
             }
@@ -255,42 +391,29 @@ public final class SQLiteUtils {
                 TextUtils.join(", ", definitions));
     }
 
+    public static String createColumnDefinition(TableInfo tableInfo, Field field) {
+        return createColumnDefinition(tableInfo, tableInfo.getColumnInfo(field));
+    }
+
     /**
-     * 创建每一列的构建语句
+     * 创建每一列的构建语句,列的类型在TableInfo初始化时已经确定
      */
     @SuppressWarnings("unchecked")
-    public static String createColumnDefinition(TableInfo tableInfo, Field field) {
+    public static String createColumnDefinition(TableInfo tableInfo, ColumnInfo columnInfo) {
         StringBuilder definition = new StringBuilder();
 
-        Class<?> type = field.getType();
+        final Class<?> type = columnInfo.getSerializedType();
         // 获取列名
-        final String name = tableInfo.getColumnName(field);
-        final TypeSerializer typeSerializer = Cache.getParserForType(field.getType());
+        final String name = columnInfo.getName();
         // 获取列的注解
-        final Column column = field.getAnnotation(Column.class);
-
-        if (typeSerializer != null) {
-            type = typeSerializer.getSerializedType();
-        }
+        final Column column = columnInfo.getColumn();
+        // 将Java的Field类型转换为SQLite的基本类型(INTEGER, REAL, TEXT, BLOB),外键使用INTEGER,枚举使用TEXT
+        final SQLiteType sqliteType = columnInfo.getSQLiteType();
 
-        if (TYPE_MAP.containsKey(type)) {
-            // 将Java的Field类型转换为SQLite的基本类型(INTEGER, REAL, TEXT, BLOB)
+        if (sqliteType != null) {
             definition.append(name);
             definition.append(" ");
-            definition.append(TYPE_MAP.get(type).toString());
-        } else if (ReflectionUtils.isModel(type)) {
-            // 外键,使用Integer类型
-            definition.append(name);
-            definition.append(" ");
-            definition.append(SQLiteType.INTEGER.toString());
-        } else if (ReflectionUtils.isSubclassOf(type, Enum.class)) {
-            // 枚举类型
-            definition.append(name);
-            definition.append(" ");
-            definition.append(SQLiteType.TEXT.toString());
-        }
-
-        if (!TextUtils.isEmpty(definition)) {
+            definition.append(sqliteType.toString());
 
             if (name.equals(tableInfo.getIdName())) {
                 definition.append(" PRIMARY KEY AUTOINCREMENT");
@@ -329,10 +452,146 @@ public final class SQLiteUtils {
         return definition.toString();
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * 生成编译用的INSERT语句,参数顺序和TableInfo.getBindColumnNames()一致
+     */
+    public static String createInsertSql(TableInfo tableInfo) {
+        final String[] columnNames = tableInfo.getBindColumnNames();
+        if (columnNames.length == 0) {
+            // 除主键外没有其他列时,插入一个NULL主键由SQLite自动生成
+            return "INSERT INTO " + tableInfo.getTableName() + " (" + tableInfo.getIdName() + ") VALUES (NULL)";
+        }
+
+        final StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ").append(tableInfo.getTableName()).append(" (");
+        sql.append(TextUtils.join(", ", columnNames));
+        sql.append(") VALUES (");
+        for (int i = 0; i < columnNames.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(")");
+
+        return sql.toString();
+    }
+
+    /**
+     * 生成编译用的UPDATE语句,参数顺序和TableInfo.getBindColumnNames()一致,最后一个参数是主键.
+     * 除主键外没有其他列时返回null.
+     */
+    public static String createUpdateSql(TableInfo tableInfo) {
+        return createUpdateSql(tableInfo, tableInfo.getBindColumnNames());
+    }
+
+    /**
+     * 生成只更新指定列的UPDATE语句,参数顺序和columnNames一致,最后一个参数是主键.
+     * columnNames为空时返回null.
+     */
+    public static String createUpdateSql(TableInfo tableInfo, String[] columnNames) {
+        if (columnNames.length == 0) {
+            return null;
+        }
+
+        final StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE ").append(tableInfo.getTableName()).append(" SET ");
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columnNames[i]).append("=?");
+        }
+        sql.append(" WHERE ").append(tableInfo.getIdName()).append("=?");
+
+        return sql.toString();
+    }
+
+    /**
+     * 生成upsert时按唯一键更新一行的语句.
+     * 参数顺序为TableInfo.getBindColumnNames(),之后是TableInfo.getUniqueKey()中的每一列.
+     */
+    public static String createUpsertUpdateSql(TableInfo tableInfo) {
+        final String[] columnNames = tableInfo.getBindColumnNames();
+
+        final StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE ").append(tableInfo.getTableName()).append(" SET ");
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columnNames[i]).append("=?");
+        }
+        sql.append(" WHERE ");
+        appendUniqueKeyCondition(sql, tableInfo);
+
+        return sql.toString();
+    }
+
+    /**
+     * 生成按唯一键查询主键的语句,参数顺序和TableInfo.getUniqueKey()一致
+     */
+    public static String createUniqueKeyQuerySql(TableInfo tableInfo) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(tableInfo.getIdName()).append(" FROM ").append(tableInfo.getTableName());
+        sql.append(" WHERE ");
+        appendUniqueKeyCondition(sql, tableInfo);
+
+        return sql.toString();
+    }
+
+    /**
+     * 生成按主键批量删除的语句,包含count个参数
+     */
+    public static String createDeleteInSql(TableInfo tableInfo, int count) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("DELETE FROM ").append(tableInfo.getTableName());
+        sql.append(" WHERE ").append(tableInfo.getIdName()).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(")");
+
+        return sql.toString();
+    }
+
+    /**
+     * 生成按主键批量查询的语句,count为IN中参数的个数
+     */
+    public static String createSelectInSql(TableInfo tableInfo, int count) {
+        return createSelectInSql(tableInfo, tableInfo.getIdName(), count);
+    }
+
+    /**
+     * 生成按column批量查询的语句,count为IN中参数的个数
+     */
+    public static String createSelectInSql(TableInfo tableInfo, String column, int count) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT * FROM ").append(tableInfo.getTableName());
+        sql.append(" WHERE ").append(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(")");
+
+        return sql.toString();
+    }
+
+    /**
+     * 生成按主键删除一行的语句
+     */
+    public static String createDeleteSql(TableInfo tableInfo) {
+        return "DELETE FROM " + tableInfo.getTableName() + " WHERE " + tableInfo.getIdName() + "=?";
+    }
+
     public static <T extends Model> List<T> processCursor(Class<? extends Model> type, Cursor cursor) {
+        return processCursor(type, cursor, true);
+    }
+
+    /**
+     * 读取cursor的每一行,useCache为false时不复用Cache中的实体,读取的实体和预取的外键实体都不放入Cache
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Model> List<T> processCursor(Class<? extends Model> type, Cursor cursor,
+            boolean useCache) {
         TableInfo tableInfo = Cache.getTableInfo(type);
-        String idName = tableInfo.getIdName();
         final List<T> entities = new ArrayList<T>();
 
         try {
@@ -342,20 +601,41 @@ public final class SQLiteUtils {
                 /**
                  * Obtain the columns ordered to fix issue #106 (https://github.com/pardom/ActiveAndroid/issues/106)
                  * when the cursor have multiple columns with same name obtained from join tables.
+                 * 列下标只在第一行之前计算一次,同样列结构的查询复用TableInfo中缓存的映射.
                  */
-                List<String> columnsOrdered = new ArrayList<String>(Arrays.asList(cursor.getColumnNames()));
-                do {
-                    // 判断LruCache缓存中是否存在Model类.
-                    Model entity = Cache.getEntity(type, cursor.getLong(columnsOrdered.indexOf(idName)));
-                    if (entity == null) {
-                        entity = (T) entityConstructor.newInstance();
-                    }
+                final ColumnMapping mapping = tableInfo.getColumnMapping(cursor.getColumnNames());
+                final int idIndex = mapping.getIdIndex();
 
-                    // 解析Cursor,填充用户自定义的Model对象的field成员
-                    entity.loadFromCursor(cursor);
-                    entities.add((T) entity);
+                final boolean prefetchOwner = sPrefetchedEntities.get() == null;
+                if (prefetchOwner) {
+                    sPrefetchedEntities.set(new HashMap<Class<? extends Model>, Map<Long, Model>>());
+                }
+
+                try {
+                    // 先批量加载所有行引用的外键实体,避免每一行单独查询一次
+                    prefetchForeignKeys(tableInfo, cursor, Integer.MAX_VALUE, useCache);
+
+                    cursor.moveToFirst();
+                    do {
+                        // 判断LruCache缓存中是否存在Model类.
+                        Model entity = null;
+                        if (useCache && idIndex >= 0) {
+                            entity = Cache.getEntity(type, cursor.getLong(idIndex));
+                        }
+                        if (entity == null) {
+                            entity = (T) entityConstructor.newInstance();
+                        }
+
+                        // 解析Cursor,填充用户自定义的Model对象的field成员
+                        entity.loadFromCursor(cursor, mapping, useCache);
+                        entities.add((T) entity);
+                    }
+                    while (cursor.moveToNext());
+                } finally {
+                    if (prefetchOwner) {
+                        sPrefetchedEntities.remove();
+                    }
                 }
-                while (cursor.moveToNext());
             }
 
         } catch (NoSuchMethodException e) {
@@ -374,11 +654,257 @@ public final class SQLiteUtils {
         return entities;
     }
 
-    private static int processIntCursor(final Cursor cursor) {
-        if (cursor.moveToFirst()) {
-            return cursor.getInt(0);
+    /**
+     * 按主键批量加载实体,每500个主键一条IN查询,返回的Map中只包含查到的实体
+     */
+    public static <T extends Model> Map<Long, T> loadEntities(Class<T> type, Collection<Long> ids) {
+        return loadEntities(type, ids, true);
+    }
+
+    /**
+     * 按主键批量加载实体,useCache为false时加载的实体不放入Cache
+     */
+    public static <T extends Model> Map<Long, T> loadEntities(Class<T> type, Collection<Long> ids,
+            boolean useCache) {
+        final Map<Long, T> entities = new HashMap<Long, T>();
+        final TableInfo tableInfo = Cache.getTableInfo(type);
+        final List<Long> remaining = new ArrayList<Long>(ids);
+        for (int start = 0; start < remaining.size(); start += IN_QUERY_CHUNK_SIZE) {
+            final List<Long> chunk = remaining.subList(start, Math.min(start + IN_QUERY_CHUNK_SIZE, remaining.size()));
+            final String[] args = new String[chunk.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = chunk.get(i).toString();
+            }
+
+            final List<T> models = rawQuery(type, createSelectInSql(tableInfo, args.length), args, useCache);
+            for (T model : models) {
+                entities.put(model.getId(), model);
+            }
+        }
+
+        return entities;
+    }
+
+    /**
+     * 批量查询parents在type表中通过foreignKey关联的子实体,每500个父实体一条IN查询,在内存中按外键分组.
+     * 返回的Map中每个已保存的父实体都有一项,没有子实体时为空列表.
+     *
+     * @param cacheResult 是否把每个父实体的子实体列表缓存到Cache,type表修改之前Model.getMany()直接使用缓存.
+     *                    已经有有效缓存的父实体不再查询.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Model> Map<Long, List<T>> loadChildren(Collection<? extends Model> parents,
+            Class<T> type, String foreignKey, boolean cacheResult) {
+        final TableInfo tableInfo = Cache.getTableInfo(type);
+        ColumnInfo foreignKeyColumn = null;
+        for (ColumnInfo column : tableInfo.getColumns()) {
+            if (column.getName().equals(foreignKey)) {
+                foreignKeyColumn = column;
+                break;
+            }
+        }
+        if (foreignKeyColumn == null) {
+            throw new IllegalArgumentException(tableInfo.getTableName() + " has no column " + foreignKey);
+        }
+
+        final Map<Long, List<T>> children = new LinkedHashMap<Long, List<T>>();
+        final Map<Long, Model> missing = new LinkedHashMap<Long, Model>();
+        for (Model parent : parents) {
+            final Long id = parent.getId();
+            if (id == null || children.containsKey(id)) {
+                continue;
+            }
+
+            final List<T> cached = cacheResult ? Cache.getRelation(parent, type, foreignKey) : null;
+            if (cached != null) {
+                children.put(id, cached);
+            } else {
+                children.put(id, new ArrayList<T>());
+                missing.put(id, parent);
+            }
+        }
+
+        // 在查询之前读取版本,查询期间其他线程对type表的写入会使缓存的列表失效
+        final int version = tableInfo.getVersion();
+        final List<Long> ids = new ArrayList<Long>(missing.keySet());
+        for (int start = 0; start < ids.size(); start += IN_QUERY_CHUNK_SIZE) {
+            final List<Long> chunk = ids.subList(start, Math.min(start + IN_QUERY_CHUNK_SIZE, ids.size()));
+            final String[] args = new String[chunk.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = chunk.get(i).toString();
+            }
+
+            final List<T> models = rawQuery(type, createSelectInSql(tableInfo, foreignKey, args.length), args);
+            for (T model : models) {
+                try {
+                    // 快照值中外键列为引用的主键,普通外键和Lazy外键都适用
+                    final Object parentId = foreignKeyColumn.getSnapshotValue(model);
+                    final List<T> group = parentId instanceof Number
+                            ? children.get(((Number) parentId).longValue()) : null;
+                    if (group != null) {
+                        group.add(model);
+                    }
+                } catch (IllegalAccessException e) {
+                    Log.e(e.getClass().getName(), e);
+                }
+            }
+        }
+
+        if (cacheResult) {
+            for (Map.Entry<Long, Model> entry : missing.entrySet()) {
+                Cache.putRelation(entry.getValue(), type, foreignKey, children.get(entry.getKey()), version);
+            }
+        }
+
+        return children;
+    }
+
+    /**
+     * 预取cursor从当前行开始最多rowCount行引用的外键实体,用于ModelIterator这样逐行读取的场景.
+     * 返回时cursor回到原来的行.预取的实体保存在返回的Map中,读取这些行时通过withPrefetchedEntities()使用.
+     *
+     * @param useCache 为false时预取的实体不放入Cache
+     */
+    public static Map<Class<? extends Model>, Map<Long, Model>> prefetchForeignKeys(Class<? extends Model> type,
+            Cursor cursor, int rowCount, boolean useCache) {
+        final Map<Class<? extends Model>, Map<Long, Model>> prefetched =
+                new HashMap<Class<? extends Model>, Map<Long, Model>>();
+        final int position = cursor.getPosition();
+        final Map<Class<? extends Model>, Map<Long, Model>> previous = withPrefetchedEntities(prefetched);
+        try {
+            prefetchForeignKeys(Cache.getTableInfo(type), cursor, rowCount, useCache);
+        } finally {
+            withPrefetchedEntities(previous);
+            cursor.moveToPosition(position);
+        }
+
+        return prefetched;
+    }
+
+    /**
+     * 把prefetched设置为当前线程的预取实体,BinderUtils.loadEntity()优先从中查找,返回之前的设置.
+     * 使用完毕后应以返回值再调用一次恢复,通常写在finally中.
+     */
+    public static Map<Class<? extends Model>, Map<Long, Model>> withPrefetchedEntities(
+            Map<Class<? extends Model>, Map<Long, Model>> prefetched) {
+        final Map<Class<? extends Model>, Map<Long, Model>> previous = sPrefetchedEntities.get();
+        if (prefetched != null) {
+            sPrefetchedEntities.set(prefetched);
+        } else {
+            sPrefetchedEntities.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * 获取当前线程的查询预取到的type实体,key为主键,没有查到的主键对应null.不在processCursor()中时返回null.
+     */
+    public static Map<Long, Model> getPrefetchedEntities(Class<? extends Model> type) {
+        final Map<Class<? extends Model>, Map<Long, Model>> prefetched = sPrefetchedEntities.get();
+        return prefetched != null ? prefetched.get(type) : null;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE METHODS
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 从当前行开始遍历Cursor的最多rowCount行,收集每个外键列引用的、不在缓存中的主键,按引用的表分别用IN查询批量加载.
+     * 引用的实体本身还有外键时,processCursor()会在加载它们时继续按层批量预取.
+     */
+    @SuppressWarnings("unchecked")
+    private static void prefetchForeignKeys(TableInfo tableInfo, Cursor cursor, int rowCount, boolean useCache) {
+        final String[] columnNames = cursor.getColumnNames();
+        final List<Integer> indexes = new ArrayList<Integer>();
+        final List<Class<? extends Model>> types = new ArrayList<Class<? extends Model>>();
+        for (ColumnInfo column : tableInfo.getColumns()) {
+            // 延迟加载的外键只读取主键,不需要预取
+            if (column.getValueType() != ColumnInfo.ValueType.MODEL || column.isLazy()) {
+                continue;
+            }
+
+            final int index = BinderUtils.getColumnIndex(columnNames, column.getName());
+            if (index >= 0) {
+                indexes.add(index);
+                types.add((Class<? extends Model>) column.getSerializedType());
+            }
+        }
+
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        final Map<Class<? extends Model>, Set<Long>> missing = new LinkedHashMap<Class<? extends Model>, Set<Long>>();
+        do {
+            for (int i = 0; i < indexes.size(); i++) {
+                final int index = indexes.get(i);
+                if (cursor.isNull(index)) {
+                    continue;
+                }
+
+                final Class<? extends Model> type = types.get(i);
+                final long id = cursor.getLong(index);
+                if (isLoaded(type, id)) {
+                    continue;
+                }
+
+                Set<Long> ids = missing.get(type);
+                if (ids == null) {
+                    ids = new LinkedHashSet<Long>();
+                    missing.put(type, ids);
+                }
+                ids.add(id);
+            }
+        }
+        while (--rowCount > 0 && cursor.moveToNext());
+
+        for (Map.Entry<Class<? extends Model>, Set<Long>> entry : missing.entrySet()) {
+            prefetchEntities(entry.getKey(), entry.getValue(), useCache);
+        }
+    }
+
+    private static void prefetchEntities(Class<? extends Model> type, Set<Long> ids, boolean useCache) {
+        final Map<Class<? extends Model>, Map<Long, Model>> prefetched = sPrefetchedEntities.get();
+        Map<Long, Model> entities = prefetched.get(type);
+        if (entities == null) {
+            entities = new HashMap<Long, Model>();
+            prefetched.put(type, entities);
+        }
+
+        // 先标记为已查询,查不到的主键不会在读取每一行时再单独查询
+        for (Long id : ids) {
+            entities.put(id, null);
+        }
+        entities.putAll(loadEntities(type, ids, useCache));
+    }
+
+    private static boolean isLoaded(Class<? extends Model> type, long id) {
+        if (Cache.getEntity(type, id) != null) {
+            return true;
+        }
+
+        final Map<Long, Model> entities = getPrefetchedEntities(type);
+        return entities != null && entities.containsKey(id);
+    }
+
+    private static void appendUniqueKeyCondition(StringBuilder sql, TableInfo tableInfo) {
+        final ColumnInfo[] uniqueKey = tableInfo.getUniqueKey();
+        for (int i = 0; i < uniqueKey.length; i++) {
+            if (i > 0) {
+                sql.append(" AND ");
+            }
+            sql.append(uniqueKey[i].getName()).append("=?");
+        }
+    }
+
+    private static void bindArguments(SQLiteStatement statement, Object[] bindArgs) {
+        if (bindArgs == null) {
+            return;
+        }
+
+        for (int i = 0; i < bindArgs.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
         }
-        return 0;
     }
 
     public static List<String> lexSqlScript(String sqlScript) {
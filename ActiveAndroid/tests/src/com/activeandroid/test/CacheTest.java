@@ -1,25 +1,58 @@
 package com.activeandroid.test;
 
+import android.database.sqlite.SQLiteStatement;
+import android.os.Debug;
+import android.support.v4.util.LruCache;
 import android.test.AndroidTestCase;
 
 import com.activeandroid.ActiveAndroid;
 import com.activeandroid.Cache;
+import com.activeandroid.CachePolicy;
+import com.activeandroid.CacheStats;
 import com.activeandroid.Configuration;
 import com.activeandroid.Model;
 import com.activeandroid.TableInfo;
 import com.activeandroid.annotation.Table;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CacheTest extends AndroidTestCase {
 
     @Override
     protected void setUp() {
-        Configuration conf = new Configuration.Builder(getContext())
+        ActiveAndroid.initialize(createConfiguration().create(), true);
+    }
+
+    private Configuration.Builder createConfiguration() {
+        return new Configuration.Builder(getContext())
                 .setDatabaseName("CacheTest")
-                .addModelClasses(CacheTestModel.class, CacheTestModel2.class)
-                .create();
-        ActiveAndroid.initialize(conf, true);
+                .addModelClasses(CacheTestModel.class, CacheTestModel2.class);
+    }
+
+    /**
+     * Re-initializes the library with policies set through the configuration.
+     */
+    private void initializeWithPolicies(CachePolicy first, CachePolicy second) {
+        initializeWithPolicies(first, second, CachePolicy.ReferenceTier.NONE);
+    }
+
+    private void initializeWithPolicies(CachePolicy first, CachePolicy second,
+            CachePolicy.ReferenceTier referenceTier) {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(createConfiguration()
+                .setCachePolicy(CacheTestModel.class, first)
+                .setCachePolicy(CacheTestModel2.class, second)
+                .setReferenceTier(referenceTier)
+                .create(), true);
+    }
+
+    private void restoreDefaultPolicies() {
+        ActiveAndroid.dispose();
+        setUp();
     }
 
     public void testGetTableInfos() {
@@ -40,6 +73,355 @@ public class CacheTest extends AndroidTestCase {
         }
     }
 
+    public void testStatementCache() {
+        String sql = "SELECT COUNT(*) FROM CacheTestModel";
+
+        SQLiteStatement first = Cache.acquireStatement(sql);
+        Cache.releaseStatement(sql, first);
+        SQLiteStatement second = Cache.acquireStatement(sql);
+        assertSame(first, second);
+
+        // a statement that is checked out is never handed to another caller
+        SQLiteStatement third = Cache.acquireStatement(sql);
+        assertNotSame(second, third);
+        assertEquals(0, third.simpleQueryForLong());
+
+        Cache.releaseStatement(sql, third);
+        Cache.releaseStatement(sql, second);
+        SQLiteStatement fourth = Cache.acquireStatement(sql);
+        assertSame(third, fourth);
+        Cache.releaseStatement(sql, fourth);
+    }
+
+    /**
+     * Entity lookups should not allocate, neither for hits nor for misses.
+     */
+    public void testEntityLookupDoesNotAllocate() {
+        CacheTestModel model = new CacheTestModel();
+        model.save();
+        Cache.addEntity(model);
+        long id = model.getId();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < 100; i++) {
+            Cache.getEntity(CacheTestModel.class, id);
+            Cache.getEntity(CacheTestModel.class, id + 1000 + i);
+            Cache.getEntity(CacheTestModel2.class, id);
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals(0, Debug.getThreadAllocCount());
+        assertSame(model, Cache.getEntity(CacheTestModel.class, id));
+        assertNull(Cache.getEntity(CacheTestModel2.class, id));
+    }
+
+    /**
+     * Removed entities should not be found again, while other entities hashing nearby stay reachable.
+     */
+    public void testRemoveEntities() {
+        List<CacheTestModel> models = new ArrayList<CacheTestModel>();
+        for (int i = 0; i < 40; i++) {
+            CacheTestModel model = new CacheTestModel();
+            model.save();
+            Cache.addEntity(model);
+            models.add(model);
+        }
+
+        long[] removed = new long[20];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = models.get(i * 2).getId();
+        }
+        Cache.removeEntities(CacheTestModel.class, removed);
+
+        for (int i = 0; i < models.size(); i++) {
+            Model cached = Cache.getEntity(CacheTestModel.class, models.get(i).getId());
+            if (i % 2 == 0) {
+                assertNull(cached);
+            } else {
+                assertSame(models.get(i), cached);
+            }
+        }
+
+        Cache.removeEntities(CacheTestModel.class);
+        assertNull(Cache.getEntity(CacheTestModel.class, models.get(1).getId()));
+    }
+
+    /**
+     * A separate cache should only evict its own entities, and a disabled one should not keep any.
+     */
+    public void testSeparateAndDisabledPolicies() {
+        initializeWithPolicies(CachePolicy.separate(2), CachePolicy.disabled());
+        try {
+            List<CacheTestModel> models = new ArrayList<CacheTestModel>();
+            for (int i = 0; i < 5; i++) {
+                CacheTestModel model = new CacheTestModel();
+                model.save();
+                Cache.addEntity(model);
+                models.add(model);
+            }
+
+            int cached = 0;
+            for (CacheTestModel model : models) {
+                if (Cache.getEntity(CacheTestModel.class, model.getId()) == model) {
+                    cached++;
+                }
+            }
+            assertEquals(2, cached);
+
+            CacheTestModel2 uncached = new CacheTestModel2();
+            uncached.save();
+            Cache.addEntity(uncached);
+            assertNull(Cache.getEntity(CacheTestModel2.class, uncached.getId()));
+        } finally {
+            restoreDefaultPolicies();
+        }
+    }
+
+    /**
+     * Pinned entities are never evicted, but still expire after their time to live. Expired entities that
+     * are never looked up again should be purged by the next put.
+     */
+    public void testPinnedPolicyWithTtl() throws InterruptedException {
+        initializeWithPolicies(CachePolicy.pinned().withTtl(200), CachePolicy.shared());
+        try {
+            List<CacheTestModel> models = new ArrayList<CacheTestModel>();
+            ActiveAndroid.beginTransaction();
+            try {
+                for (int i = 0; i < Cache.DEFAULT_CACHE_SIZE + 10; i++) {
+                    CacheTestModel model = new CacheTestModel();
+                    model.save();
+                    Cache.addEntity(model);
+                    models.add(model);
+                }
+                ActiveAndroid.setTransactionSuccessful();
+            } finally {
+                ActiveAndroid.endTransaction();
+            }
+            for (CacheTestModel model : models) {
+                assertSame(model, Cache.getEntity(CacheTestModel.class, model.getId()));
+            }
+
+            Thread.sleep(300);
+            assertNull(Cache.getEntity(CacheTestModel.class, models.get(0).getId()));
+
+            CacheTestModel fresh = new CacheTestModel();
+            fresh.save();
+            Cache.addEntity(fresh);
+            assertEquals(1, Cache.getStats().getTable(CacheTestModel.class).getSize());
+            assertSame(fresh, Cache.getEntity(CacheTestModel.class, fresh.getId()));
+        } finally {
+            restoreDefaultPolicies();
+        }
+    }
+
+    /**
+     * Evicted entities that are still referenced elsewhere should be found again through the weak tier.
+     */
+    public void testWeakReferenceTier() {
+        initializeWithPolicies(CachePolicy.separate(2), CachePolicy.shared(), CachePolicy.ReferenceTier.WEAK);
+        try {
+            List<CacheTestModel> models = new ArrayList<CacheTestModel>();
+            for (int i = 0; i < 5; i++) {
+                CacheTestModel model = new CacheTestModel();
+                model.save();
+                Cache.addEntity(model);
+                models.add(model);
+            }
+
+            for (CacheTestModel model : models) {
+                assertSame(model, Cache.getEntity(CacheTestModel.class, model.getId()));
+            }
+            assertTrue(Cache.getReferenceHitCount() >= 3);
+
+            // a removed entity is gone from both tiers
+            Cache.removeEntity(models.get(0));
+            assertNull(Cache.getEntity(CacheTestModel.class, models.get(0).getId()));
+        } finally {
+            restoreDefaultPolicies();
+        }
+    }
+
+    public void testPolicyFromAnnotation() {
+        CachePolicy policy = Cache.getTableInfo(CacheTestModel.class).getCachePolicy();
+        assertEquals(Table.CacheMode.SHARED, policy.getMode());
+        assertEquals(0, policy.getTtlMillis());
+    }
+
+    /**
+     * A separate policy declared without a cache size should fail with a message naming the model.
+     */
+    public void testSeparatePolicyWithoutSize() {
+        try {
+            CachePolicy.of(UnsizedModel.class, UnsizedModel.class.getAnnotation(Table.class));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(UnsizedModel.class.getName()));
+        }
+    }
+
+    /**
+     * Stats should count hits, misses and evictions per table, and a reset should only clear the counters.
+     */
+    public void testCacheStats() {
+        initializeWithPolicies(CachePolicy.separate(2), CachePolicy.shared());
+        try {
+            List<CacheTestModel> models = new ArrayList<CacheTestModel>();
+            for (int i = 0; i < 3; i++) {
+                CacheTestModel model = new CacheTestModel();
+                model.save();
+                models.add(model);
+            }
+
+            Cache.resetStats();
+            for (CacheTestModel model : models) {
+                Cache.addEntity(model);
+            }
+            for (CacheTestModel model : models) {
+                Cache.getEntity(CacheTestModel.class, model.getId());
+            }
+            assertNull(Cache.getEntity(CacheTestModel2.class, 1L));
+
+            CacheStats stats = Cache.getStats();
+            CacheStats.TableStats table = stats.getTable(CacheTestModel.class);
+            assertEquals(3, table.getPutCount());
+            assertEquals(1, table.getEvictionCount());
+            assertEquals(2, table.getHitCount());
+            assertEquals(1, table.getMissCount());
+            assertEquals(2, table.getSize());
+            assertTrue(table.getEstimatedBytes() > 0);
+            assertNull(stats.getTable(CacheTestModel2.class));
+            assertEquals(2, stats.getMissCount());
+            assertEquals(0.5, stats.getHitRate(), 0.001);
+
+            Cache.resetStats();
+            stats = Cache.getStats();
+            assertEquals(0, stats.getHitCount());
+            assertEquals(0, stats.getMissCount());
+            assertEquals(2, stats.getSize());
+        } finally {
+            restoreDefaultPolicies();
+        }
+    }
+
+    /**
+     * Three reader threads look up cached entities while a dedicated writer thread keeps putting the same
+     * entities back. Readers should always get the cached instance, and finish sooner than the same
+     * workload on a LruCache behind a single lock, the previous design.
+     */
+    public void testConcurrentEntityCache() throws InterruptedException {
+        ActiveAndroid.beginTransaction();
+        final List<Model> models = new ArrayList<Model>();
+        try {
+            for (int i = 0; i < 256; i++) {
+                CacheTestModel model = new CacheTestModel();
+                model.save();
+                models.add(model);
+            }
+            ActiveAndroid.setTransactionSuccessful();
+        } finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        final AtomicInteger mismatches = new AtomicInteger();
+        long lockFree = runContention(new Operation() {
+            @Override
+            public void run(int index) {
+                Model model = models.get(index & 255);
+                if (Cache.getEntity(CacheTestModel.class, model.getId()) != model) {
+                    mismatches.incrementAndGet();
+                }
+            }
+        }, new Operation() {
+            @Override
+            public void run(int index) {
+                Cache.addEntity(models.get(index & 255));
+            }
+        });
+
+        final LruCache<String, Model> locked = new LruCache<String, Model>(Cache.DEFAULT_CACHE_SIZE);
+        for (Model model : models) {
+            locked.put(Cache.getIdentifier(model), model);
+        }
+        long globalLock = runContention(new Operation() {
+            @Override
+            public void run(int index) {
+                Model model = models.get(index & 255);
+                synchronized (locked) {
+                    if (locked.get(Cache.getIdentifier(model)) != model) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            }
+        }, new Operation() {
+            @Override
+            public void run(int index) {
+                Model model = models.get(index & 255);
+                synchronized (locked) {
+                    locked.put(Cache.getIdentifier(model), model);
+                }
+            }
+        });
+
+        assertEquals(0, mismatches.get());
+        assertTrue("entity cache took " + lockFree + "ms, LruCache under one lock " + globalLock + "ms",
+                lockFree < globalLock);
+    }
+
+    /**
+     * Runs 3 reader threads, 100000 reads each, while one writer thread runs writer until they finish.
+     * Returns the wall time of the readers in ms.
+     */
+    private static long runContention(final Operation reader, final Operation writer)
+            throws InterruptedException {
+        final int readerCount = 3;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(readerCount);
+        for (int i = 0; i < readerCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 100000; j++) {
+                            reader.run(j);
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        Thread writerThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    for (int j = 0; done.getCount() > 0; j++) {
+                        writer.run(j);
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        writerThread.start();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = (System.nanoTime() - begin) / 1000000;
+        writerThread.join();
+        return elapsed;
+    }
+
+    private interface Operation {
+        void run(int index);
+    }
+
     @Table(name = "CacheTestModel")
     private static class CacheTestModel extends Model {
     }
@@ -47,4 +429,8 @@ public class CacheTest extends AndroidTestCase {
     @Table(name = "CacheTestModel2")
     private static class CacheTestModel2 extends Model {
     }
+
+    @Table(name = "UnsizedModel", cacheMode = Table.CacheMode.SEPARATE)
+    private static class UnsizedModel extends Model {
+    }
 }
@@ -15,6 +15,7 @@ public class ConfigurationTest extends AndroidTestCase {
         Configuration conf = new Configuration.Builder(getContext()).create();
         assertNotNull(conf.getContext());
         assertEquals(1024, conf.getCacheSize());
+        assertEquals(32, conf.getStatementCacheSize());
         assertEquals("Application.db", conf.getDatabaseName());
         assertEquals(1, conf.getDatabaseVersion());
         assertNull(conf.getModelClasses());
@@ -0,0 +1,177 @@
+package com.activeandroid.test;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Lazy;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Covers the ModelBinder classes generated by ActiveAndroid-compiler for the test models.
+ */
+public class ModelBinderTest extends ActiveAndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        new Delete().from(BinderMockModel.class).execute();
+    }
+
+    public void testBindersAreGenerated() {
+        assertNotNull(Cache.getTableInfo(MockModel.class).getModelBinder());
+        assertNotNull(Cache.getTableInfo(BinderMockModel.class).getModelBinder());
+    }
+
+    /**
+     * Every kind of column should survive a save and a load through the generated binder.
+     */
+    public void testRoundTrip() {
+        MockModel referenced = new MockModel();
+        referenced.intField = 7;
+        referenced.save();
+
+        BinderMockModel model = new BinderMockModel();
+        model.byteField = 1;
+        model.shortField = 2;
+        model.intField = 3;
+        model.longField = 4L;
+        model.floatField = 5.5f;
+        model.doubleField = 6.25;
+        model.booleanField = true;
+        model.charField = 'c';
+        model.boxedInt = 8;
+        model.boxedLong = 9L;
+        model.boxedDouble = 10.5;
+        model.boxedBoolean = Boolean.TRUE;
+        model.stringField = "text";
+        model.blobField = new byte[] { 1, 2, 3 };
+        model.dateField = new Date(123456789L);
+        model.kind = BinderMockModel.Kind.SECOND;
+        model.model = referenced;
+        model.lazy = Lazy.of(referenced);
+        model.save();
+
+        BinderMockModel loaded = reload(model);
+        assertEquals(1, loaded.byteField);
+        assertEquals(2, loaded.shortField);
+        assertEquals(3, loaded.intField);
+        assertEquals(4L, loaded.longField);
+        assertEquals(5.5f, loaded.floatField);
+        assertEquals(6.25, loaded.doubleField);
+        assertTrue(loaded.booleanField);
+        assertEquals('c', loaded.charField);
+        assertEquals(Integer.valueOf(8), loaded.boxedInt);
+        assertEquals(Long.valueOf(9), loaded.boxedLong);
+        assertEquals(Double.valueOf(10.5), loaded.boxedDouble);
+        assertEquals(Boolean.TRUE, loaded.boxedBoolean);
+        assertEquals("text", loaded.stringField);
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, loaded.blobField));
+        assertEquals(new Date(123456789L), loaded.dateField);
+        assertEquals(BinderMockModel.Kind.SECOND, loaded.kind);
+        assertEquals(referenced.getId(), loaded.model.getId());
+        assertEquals(7, loaded.model.intField);
+        assertEquals(referenced.getId(), loaded.lazy.getId());
+        assertEquals(7, loaded.lazy.get().intField);
+    }
+
+    /**
+     * Null object columns should be written as NULL and read back as null.
+     */
+    public void testNullsRoundTrip() {
+        BinderMockModel model = new BinderMockModel();
+        model.save();
+
+        BinderMockModel loaded = reload(model);
+        assertNull(loaded.boxedInt);
+        assertNull(loaded.boxedLong);
+        assertNull(loaded.boxedDouble);
+        assertNull(loaded.boxedBoolean);
+        assertNull(loaded.stringField);
+        assertNull(loaded.blobField);
+        assertNull(loaded.dateField);
+        assertNull(loaded.kind);
+        assertNull(loaded.model);
+        assertNull(loaded.lazy);
+    }
+
+    /**
+     * Loads a fresh copy of model from the database, bypassing the entity cache.
+     */
+    private static BinderMockModel reload(BinderMockModel model) {
+        Cache.clear();
+        BinderMockModel loaded = new Select().from(BinderMockModel.class)
+                .where("Id = ?", model.getId()).executeSingle();
+        assertNotNull(loaded);
+        assertNotSame(model, loaded);
+        return loaded;
+    }
+
+    /**
+     * Mock model with one column of each kind the generated binder handles.
+     */
+    @Table(name = "BinderMockModel")
+    public static class BinderMockModel extends Model {
+        public enum Kind {
+            FIRST, SECOND
+        }
+
+        @Column
+        public byte byteField;
+
+        @Column
+        public short shortField;
+
+        @Column
+        public int intField;
+
+        @Column
+        public long longField;
+
+        @Column
+        public float floatField;
+
+        @Column
+        public double doubleField;
+
+        @Column
+        public boolean booleanField;
+
+        @Column
+        public char charField;
+
+        @Column
+        public Integer boxedInt;
+
+        @Column
+        public Long boxedLong;
+
+        @Column
+        public Double boxedDouble;
+
+        @Column
+        public Boolean boxedBoolean;
+
+        @Column
+        public String stringField;
+
+        @Column
+        public byte[] blobField;
+
+        @Column
+        public Date dateField;
+
+        @Column
+        public Kind kind;
+
+        @Column
+        public MockModel model;
+
+        @Column
+        public Lazy<MockModel> lazy;
+    }
+}
@@ -16,18 +16,33 @@
 
 package com.activeandroid.test;
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Debug;
+
+import com.activeandroid.ActiveAndroid;
 import com.activeandroid.Cache;
+import com.activeandroid.CachePolicy;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.ColumnMapping;
+import com.activeandroid.Configuration;
+import com.activeandroid.Lazy;
 import com.activeandroid.Model;
 import com.activeandroid.TableInfo;
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.ModelIterator;
 import com.activeandroid.query.Select;
+import com.activeandroid.util.SQLiteUtils;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -35,6 +50,14 @@ import java.util.Set;
  */
 public class ModelTest extends ActiveAndroidTestCase {
 
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // the relation tests and testJoinWithSameNames count the rows of these tables
+        new Delete().from(ChildMockModel.class).execute();
+        new Delete().from(LazyChildMockModel.class).execute();
+    }
+
 	/**
 	 * Equals should be type-safe.
 	 */	
@@ -147,6 +170,27 @@ public class ModelTest extends ActiveAndroidTestCase {
         }
     }
 
+    /**
+     * Column infos should be resolved once, in field order, with serializers applied.
+     */
+    public void testColumnInfosMatchFields() {
+        TableInfo tableInfo = Cache.getTableInfo(MockModel.class);
+        ColumnInfo[] columns = tableInfo.getColumns();
+
+        int i = 0;
+        for ( Field field : tableInfo.getFields() ) {
+            assertEquals(field, columns[i].getField());
+            assertEquals(tableInfo.getColumnName(field), columns[i].getName());
+            i++;
+        }
+        assertEquals(i, columns.length);
+
+        ColumnInfo dateColumn = tableInfo.getColumnInfo(getField(MockModel.class, "dateField"));
+        assertNotNull(dateColumn.getTypeSerializer());
+        assertEquals(ColumnInfo.ValueType.LONG, dateColumn.getValueType());
+        assertEquals(SQLiteUtils.SQLiteType.INTEGER, dateColumn.getSQLiteType());
+    }
+
     /**
      * Boolean should handle integer (0/1) and boolean (false/true) values.
      */
@@ -173,6 +217,553 @@ public class ModelTest extends ActiveAndroidTestCase {
         assertNull( new Select().from(MockModel.class).where("booleanField = ?", true).executeSingle() );
     }
 
+    /**
+     * saveAll should insert new models, update existing ones and assign ids.
+     */
+    public void testSaveAll() {
+        new Delete().from(MockModel.class).execute();
+
+        MockModel existing = new MockModel();
+        existing.intField = 1;
+        existing.save();
+
+        List<MockModel> models = new ArrayList<MockModel>();
+        existing.intField = 10;
+        models.add(existing);
+        for ( int i = 0; i < 5; i++ ) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            model.dateField = new Date();
+            models.add(model);
+        }
+
+        Model.saveAll(models);
+
+        Set<Long> ids = new HashSet<Long>();
+        for ( MockModel model : models ) {
+            assertNotNull(model.getId());
+            ids.add(model.getId());
+        }
+        assertEquals(models.size(), ids.size());
+        assertEquals(models.size(), new Select().from(MockModel.class).count());
+        assertEquals(10, new Select().from(MockModel.class).where("Id = ?", existing.getId())
+                .<MockModel>executeSingle().intField);
+    }
+
+    /**
+     * With change tracking, save() should only write modified columns and skip unchanged models.
+     */
+    public void testTrackChangesWritesOnlyModifiedColumns() {
+        TrackedMockModel model = new TrackedMockModel();
+        model.intField = 1;
+        model.stringField = "initial";
+        model.save();
+
+        // change the row behind the model's back
+        SQLiteUtils.execSql("UPDATE TrackedMockModel SET stringField = ? WHERE Id = ?",
+                new Object[] { "external", model.getId() });
+
+        model.intField = 2;
+        model.save();
+
+        TrackedMockModel loaded = new Select().from(TrackedMockModel.class)
+                .where("Id = ?", model.getId()).executeSingle();
+        assertEquals(2, loaded.intField);
+        assertEquals("external", loaded.stringField);
+
+        // nothing changed since the reload, so save() must not touch the row
+        SQLiteUtils.execSql("UPDATE TrackedMockModel SET intField = ? WHERE Id = ?",
+                new Object[] { 3, model.getId() });
+        loaded.save();
+        assertEquals(1, new Select().from(TrackedMockModel.class).where("intField = ?", 3).count());
+    }
+
+    /**
+     * An update rolled back with its transaction should be written again by the next save().
+     */
+    public void testTrackChangesAfterRollback() {
+        TrackedMockModel model = new TrackedMockModel();
+        model.intField = 1;
+        model.save();
+        String sql = "SELECT intField FROM TrackedMockModel WHERE Id = ?";
+        String[] args = { model.getId().toString() };
+
+        ActiveAndroid.beginTransaction();
+        try {
+            model.intField = 2;
+            model.save();
+        } finally {
+            ActiveAndroid.endTransaction();
+        }
+        assertEquals(1, SQLiteUtils.intQuery(sql, args));
+
+        model.save();
+        assertEquals(2, SQLiteUtils.intQuery(sql, args));
+    }
+
+    /**
+     * upsert() should update the row with the same unique key instead of inserting a new one.
+     */
+    public void testUpsert() {
+        new Delete().from(UpsertMockModel.class).execute();
+
+        UpsertMockModel first = new UpsertMockModel();
+        first.key = "a";
+        first.value = 1;
+        Long id = first.upsert();
+        assertNotNull(id);
+
+        UpsertMockModel second = new UpsertMockModel();
+        second.key = "a";
+        second.value = 2;
+        assertEquals(id, second.upsert());
+        assertEquals(id, second.getId());
+
+        assertEquals(1, new Select().from(UpsertMockModel.class).count());
+        assertEquals(2, Model.load(UpsertMockModel.class, id).value);
+    }
+
+    /**
+     * upsertAll() should return the row ids in input order, reusing existing rows.
+     */
+    public void testUpsertAll() {
+        new Delete().from(UpsertMockModel.class).execute();
+
+        UpsertMockModel existing = new UpsertMockModel();
+        existing.key = "b";
+        Long existingId = existing.upsert();
+
+        List<UpsertMockModel> models = new ArrayList<UpsertMockModel>();
+        for ( String key : new String[] { "a", "b", "c" } ) {
+            UpsertMockModel model = new UpsertMockModel();
+            model.key = key;
+            models.add(model);
+        }
+
+        List<Long> ids = Model.upsertAll(models);
+        assertEquals(3, ids.size());
+        assertEquals(existingId, ids.get(1));
+        for ( int i = 0; i < models.size(); i++ ) {
+            assertEquals(ids.get(i), models.get(i).getId());
+        }
+        assertEquals(3, new Select().from(UpsertMockModel.class).count());
+    }
+
+    /**
+     * deleteAll() should delete by id without loading models and evict them from the cache.
+     */
+    public void testDeleteAll() {
+        new Delete().from(MockModel.class).execute();
+
+        MockModel kept = new MockModel();
+        kept.save();
+        long[] ids = new long[3];
+        for ( int i = 0; i < ids.length; i++ ) {
+            MockModel model = new MockModel();
+            model.save();
+            Cache.addEntity(model);
+            ids[i] = model.getId();
+        }
+
+        assertEquals(3, Model.deleteAll(MockModel.class, ids));
+
+        assertEquals(1, new Select().from(MockModel.class).count());
+        for ( long id : ids ) {
+            assertNull(Cache.getEntity(MockModel.class, id));
+        }
+    }
+
+    /**
+     * Deleting by a query should evict only the cached models whose rows matched the WHERE clause.
+     */
+    public void testDeleteWhereEvictsMatchingEntities() {
+        new Delete().from(MockModel.class).execute();
+
+        List<MockModel> models = new ArrayList<MockModel>();
+        for ( int i = 0; i < 4; i++ ) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            model.save();
+            Cache.addEntity(model);
+            models.add(model);
+        }
+
+        new Delete().from(MockModel.class).where("intField >= ?", 2).execute();
+
+        assertEquals(2, new Select().from(MockModel.class).count());
+        assertSame(models.get(0), Cache.getEntity(MockModel.class, models.get(0).getId()));
+        assertSame(models.get(1), Cache.getEntity(MockModel.class, models.get(1).getId()));
+        assertNull(Cache.getEntity(MockModel.class, models.get(2).getId()));
+        assertNull(Cache.getEntity(MockModel.class, models.get(3).getId()));
+    }
+
+    /**
+     * Column indexes should be resolved once per result shape, taking the first occurrence
+     * of duplicated names as join queries do (issue #106).
+     */
+    public void testColumnMappingIsCachedPerResultShape() {
+        TableInfo tableInfo = Cache.getTableInfo(MockModel.class);
+        String[] cursorColumns = new String[] { "Id", "intField", "booleanField", "Id", "intField" };
+
+        ColumnMapping mapping = tableInfo.getColumnMapping(cursorColumns);
+        assertSame(mapping, tableInfo.getColumnMapping(cursorColumns.clone()));
+        assertNotSame(mapping, tableInfo.getColumnMapping(new String[] { "intField" }));
+
+        assertEquals(0, mapping.getIdIndex());
+        String[] loadColumns = tableInfo.getLoadColumnNames();
+        int[] indexes = mapping.getColumnIndexes();
+        assertEquals(loadColumns.length, indexes.length);
+        for ( int i = 0; i < loadColumns.length; i++ ) {
+            assertEquals(Arrays.asList(cursorColumns).indexOf(loadColumns[i]), indexes[i]);
+        }
+    }
+
+    /**
+     * Loading and binding primitive columns reflectively should go through Field.setInt(),
+     * Field.getInt() and friends and not allocate a boxed value per column.
+     */
+    public void testPrimitiveColumnsLoadWithoutBoxing() throws IllegalAccessException {
+        PrimitiveMockModel saved = new PrimitiveMockModel();
+        saved.byteField = 1;
+        saved.shortField = 1000;
+        saved.intField = 100000;
+        saved.longField = 10000000000L;
+        saved.floatField = 1000.5f;
+        saved.doubleField = 100000.5;
+        saved.booleanField = true;
+        saved.save();
+
+        TableInfo tableInfo = Cache.getTableInfo(PrimitiveMockModel.class);
+        List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+        for ( ColumnInfo column : tableInfo.getColumns() ) {
+            if (!column.isPrimaryKey()) {
+                columns.add(column);
+            }
+        }
+
+        Cursor cursor = Cache.openDatabase().rawQuery("SELECT * FROM PrimitiveMockModel WHERE Id = ?",
+                new String[] { saved.getId().toString() });
+        try {
+            assertTrue(cursor.moveToFirst());
+            int[] indexes = new int[columns.size()];
+            for ( int i = 0; i < indexes.length; i++ ) {
+                indexes[i] = cursor.getColumnIndex(columns.get(i).getName());
+            }
+
+            PrimitiveMockModel model = new PrimitiveMockModel();
+            // warm up, the cursor window is filled on first access
+            for ( int i = 0; i < indexes.length; i++ ) {
+                columns.get(i).loadValue(model, cursor, indexes[i]);
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for ( int round = 0; round < 100; round++ ) {
+                for ( int i = 0; i < indexes.length; i++ ) {
+                    columns.get(i).loadValue(model, cursor, indexes[i]);
+                }
+            }
+            Debug.stopAllocCounting();
+
+            assertEquals(0, Debug.getThreadAllocCount());
+            assertEquals(saved.longField, model.longField);
+            assertEquals(saved.doubleField, model.doubleField);
+            assertTrue(model.booleanField);
+        } finally {
+            cursor.close();
+        }
+
+        String sql = tableInfo.getInsertSql();
+        SQLiteStatement statement = Cache.acquireStatement(sql);
+        try {
+            // warm up, as above
+            for ( int i = 0; i < columns.size(); i++ ) {
+                columns.get(i).bindValue(saved, statement, i + 1);
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for ( int round = 0; round < 100; round++ ) {
+                for ( int i = 0; i < columns.size(); i++ ) {
+                    columns.get(i).bindValue(saved, statement, i + 1);
+                }
+            }
+            Debug.stopAllocCounting();
+
+            assertEquals(0, Debug.getThreadAllocCount());
+        } finally {
+            statement.clearBindings();
+            Cache.releaseStatement(sql, statement);
+        }
+    }
+
+    /**
+     * Foreign keys of a result set should be loaded in bulk and resolve to the same instance per id.
+     */
+    public void testForeignKeysArePrefetched() {
+        List<ParentJoinMockModel> parents = createParents(3);
+        createChildren(parents, 12, 0);
+
+        Cache.clear();
+        List<String> queries = recordQueries();
+        List<ChildMockModel> children;
+        try {
+            children = new Select().from(ChildMockModel.class).orderBy("intField").execute();
+        } finally {
+            SQLiteUtils.setQueryListener(null);
+        }
+
+        // the children themselves and one IN query for all referenced parents
+        assertEquals(2, queries.size());
+        assertTrue(queries.get(1).startsWith("SELECT * FROM ParentJoinMockModel WHERE Id IN ("));
+
+        assertEquals(12, children.size());
+        for ( ChildMockModel child : children ) {
+            ParentJoinMockModel expected = parents.get(child.intField % parents.size());
+            assertNotNull(child.parent);
+            assertEquals(expected.getId(), child.parent.getId());
+            assertEquals(expected.intField, child.parent.intField);
+            assertSame(children.get(child.intField % parents.size()).parent, child.parent);
+        }
+        assertNull(SQLiteUtils.getPrefetchedEntities(ParentJoinMockModel.class));
+    }
+
+    /**
+     * A scan that bypasses the cache should prefetch foreign keys in bulk and keep them out of the cache.
+     */
+    public void testIterateWithoutCachePrefetchesForeignKeys() {
+        List<ParentJoinMockModel> parents = createParents(3);
+        createChildren(parents, 12, 0);
+
+        Cache.clear();
+        List<String> queries = recordQueries();
+        int count = 0;
+        try {
+            ModelIterator<ChildMockModel> iterator = new Select().from(ChildMockModel.class)
+                    .orderBy("intField").iterate(false, false);
+            while ( iterator.hasNext() ) {
+                ChildMockModel child = iterator.next();
+                ParentJoinMockModel expected = parents.get(child.intField % parents.size());
+                assertEquals(expected.getId(), child.parent.getId());
+                assertEquals(expected.intField, child.parent.intField);
+                count++;
+            }
+        } finally {
+            SQLiteUtils.setQueryListener(null);
+        }
+
+        // the scan itself reads its own cursor, so the only model query is the IN query for the parents
+        assertEquals(12, count);
+        assertEquals(1, queries.size());
+        for ( ParentJoinMockModel parent : parents ) {
+            assertNull(Cache.getEntity(ParentJoinMockModel.class, parent.getId()));
+        }
+    }
+
+    /**
+     * Lazy references should only read the foreign id and load the model on first get().
+     */
+    public void testLazyReferences() {
+        List<ParentJoinMockModel> parents = createParents(3);
+        for ( int i = 0; i < parents.size(); i++ ) {
+            LazyChildMockModel child = new LazyChildMockModel();
+            child.intField = i;
+            child.parent = Lazy.of(parents.get(i));
+            child.save();
+        }
+
+        Cache.clear();
+        List<LazyChildMockModel> children = new Select().from(LazyChildMockModel.class).orderBy("intField").execute();
+        assertEquals(3, children.size());
+
+        LazyChildMockModel first = children.get(0);
+        assertFalse(first.parent.isLoaded());
+        assertEquals(parents.get(0).getId(), first.parent.getId());
+        assertEquals(0, first.parent.get().intField);
+        assertTrue(first.parent.isLoaded());
+
+        List<Lazy<ParentJoinMockModel>> references = new ArrayList<Lazy<ParentJoinMockModel>>();
+        for ( LazyChildMockModel child : children ) {
+            references.add(child.parent);
+        }
+        Lazy.resolveAll(references);
+        for ( int i = 0; i < children.size(); i++ ) {
+            Lazy<ParentJoinMockModel> reference = children.get(i).parent;
+            assertTrue(reference.isLoaded());
+            assertEquals(parents.get(i).getId(), reference.get().getId());
+            assertEquals(i, reference.get().intField);
+        }
+    }
+
+    /**
+     * include() should load related models in the same query, in both directions.
+     */
+    public void testInclude() {
+        List<ParentJoinMockModel> parents = createParents(2);
+        createChildren(parents, 6, 100);
+
+        Cache.clear();
+        List<ChildMockModel> children = new Select().from(ChildMockModel.class)
+                .include(ParentJoinMockModel.class, "parent")
+                .orderBy("ChildMockModel.intField")
+                .execute();
+        assertEquals(6, children.size());
+        for ( int i = 0; i < children.size(); i++ ) {
+            ChildMockModel child = children.get(i);
+            assertEquals(100 + i, child.intField);
+            assertEquals(parents.get(i % parents.size()).getId(), child.parent.getId());
+            assertEquals(i % parents.size(), child.parent.intField);
+        }
+
+        Cache.clear();
+        List<ParentJoinMockModel> loaded = new Select().from(ParentJoinMockModel.class)
+                .include(ChildMockModel.class, "parent")
+                .where("ParentJoinMockModel.Id IN (?, ?)", parents.get(0).getId(), parents.get(1).getId())
+                .orderBy("ParentJoinMockModel.intField")
+                .execute();
+        assertEquals(2, loaded.size());
+        for ( ParentJoinMockModel parent : loaded ) {
+            List<ChildMockModel> included = parent.children();
+            assertEquals(3, included.size());
+            for ( ChildMockModel child : included ) {
+                assertSame(parent, child.parent);
+            }
+        }
+
+        // writing to the child table invalidates the included lists
+        ChildMockModel extra = new ChildMockModel();
+        extra.parent = loaded.get(0);
+        extra.save();
+        assertEquals(4, loaded.get(0).children().size());
+    }
+
+    /**
+     * include() should resolve foreign keys in both directions from the rows it read, even for tables that
+     * are not cached at all.
+     */
+    public void testIncludeWithoutCache() {
+        List<ParentJoinMockModel> parents = createParents(2);
+        createChildren(parents, 6, 0);
+
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(new Configuration.Builder(getContext())
+                .setCachePolicy(ParentJoinMockModel.class, CachePolicy.disabled())
+                .setCachePolicy(ChildMockModel.class, CachePolicy.disabled())
+                .create());
+        List<String> queries = recordQueries();
+        try {
+            List<ChildMockModel> children = new Select().from(ChildMockModel.class)
+                    .include(ParentJoinMockModel.class, "parent")
+                    .orderBy("ChildMockModel.intField")
+                    .execute();
+            assertEquals(6, children.size());
+            for ( ChildMockModel child : children ) {
+                assertEquals(parents.get(child.intField % parents.size()).getId(), child.parent.getId());
+            }
+
+            List<ParentJoinMockModel> loaded = new Select().from(ParentJoinMockModel.class)
+                    .include(ChildMockModel.class, "parent")
+                    .where("ParentJoinMockModel.Id IN (?, ?)", parents.get(0).getId(), parents.get(1).getId())
+                    .execute();
+            assertEquals(2, loaded.size());
+
+            // no query per row to resolve a foreign key
+            assertTrue(queries.toString(), queries.isEmpty());
+        } finally {
+            SQLiteUtils.setQueryListener(null);
+            ActiveAndroid.dispose();
+            ActiveAndroid.initialize(getContext());
+        }
+    }
+
+    /**
+     * include() with explicitly selected columns should still select the root id to group the rows.
+     */
+    public void testIncludeWithExplicitColumns() {
+        List<ParentJoinMockModel> parents = createParents(2);
+        createChildren(parents, 4, 10);
+
+        Cache.clear();
+        List<ChildMockModel> children = new Select("ChildMockModel.intField").from(ChildMockModel.class)
+                .include(ParentJoinMockModel.class, "parent")
+                .orderBy("ChildMockModel.intField")
+                .execute();
+        assertEquals(4, children.size());
+        for ( int i = 0; i < children.size(); i++ ) {
+            ChildMockModel child = children.get(i);
+            assertNotNull(child.getId());
+            assertEquals(10 + i, child.intField);
+            assertEquals(parents.get(i % parents.size()).getId(), child.parent.getId());
+        }
+    }
+
+    /**
+     * A to-many include that only reads part of the children should not be cached as the complete list.
+     */
+    public void testPartialIncludeIsNotCached() {
+        List<ParentJoinMockModel> parents = createParents(1);
+        createChildren(parents, 4, 0);
+        Long id = parents.get(0).getId();
+
+        Cache.clear();
+        List<ParentJoinMockModel> limited = new Select().from(ParentJoinMockModel.class)
+                .include(ChildMockModel.class, "parent")
+                .where("ParentJoinMockModel.Id = ?", id)
+                .limit(2)
+                .execute();
+        assertEquals(1, limited.size());
+        assertEquals(4, limited.get(0).children().size());
+
+        Cache.clear();
+        List<ParentJoinMockModel> filtered = new Select().from(ParentJoinMockModel.class)
+                .include(ChildMockModel.class, "parent")
+                .where("ParentJoinMockModel.Id = ?", id)
+                .and("__i0.intField < ?", 1)
+                .execute();
+        assertEquals(1, filtered.size());
+        assertEquals(4, filtered.get(0).children().size());
+    }
+
+    /**
+     * A relation stamped with the version read before its query should not survive a write made during the query.
+     */
+    public void testRelationStampedBeforeQuery() {
+        ParentJoinMockModel parent = createParents(1).get(0);
+        int version = Cache.getTableInfo(ChildMockModel.class).getVersion();
+        List<ChildMockModel> children = new ArrayList<ChildMockModel>();
+
+        // another write to the child table lands between the query and putRelation()
+        createChildren(Arrays.asList(parent), 1, 0);
+        Cache.putRelation(parent, ChildMockModel.class, "parent", children, version);
+
+        assertNull(Cache.getRelation(parent, ChildMockModel.class, "parent"));
+        assertEquals(1, parent.children().size());
+    }
+
+    /**
+     * getMany() for a list of parents should group the children by foreign key.
+     */
+    public void testGetManyForParents() {
+        List<ParentJoinMockModel> parents = createParents(3);
+        // the last parent has no children
+        createChildren(parents.subList(0, 2), 5, 0);
+
+        Map<Long, List<ChildMockModel>> children = Model.getMany(parents, ChildMockModel.class, "parent", true);
+        assertEquals(3, children.size());
+        assertEquals(3, children.get(parents.get(0).getId()).size());
+        assertEquals(2, children.get(parents.get(1).getId()).size());
+        assertTrue(children.get(parents.get(2).getId()).isEmpty());
+        for ( ChildMockModel child : children.get(parents.get(1).getId()) ) {
+            assertEquals(parents.get(1).getId(), child.parent.getId());
+        }
+
+        assertEquals(2, parents.get(1).children().size());
+        ChildMockModel extra = new ChildMockModel();
+        extra.parent = parents.get(2);
+        extra.save();
+        assertEquals(1, parents.get(2).children().size());
+    }
+
 	/**
      * Test to check the join of two (or more) tables with some fields in common when not use a projection on select.
      * Test the issue #106 (https://github.com/pardom/ActiveAndroid/issues/106)
@@ -229,12 +820,123 @@ public class ModelTest extends ActiveAndroidTestCase {
 
     }
 
+    /**
+     * Records the SQL of every query that loads models, until the listener is reset.
+     */
+    private static List<String> recordQueries() {
+        final List<String> queries = new ArrayList<String>();
+        SQLiteUtils.setQueryListener(new SQLiteUtils.QueryListener() {
+            @Override
+            public void onQuery(String sql, String[] selectionArgs) {
+                queries.add(sql);
+            }
+        });
+        return queries;
+    }
+
+    /**
+     * Saves count parents with intField set to their index.
+     */
+    private static List<ParentJoinMockModel> createParents(int count) {
+        List<ParentJoinMockModel> parents = new ArrayList<ParentJoinMockModel>();
+        for ( int i = 0; i < count; i++ ) {
+            ParentJoinMockModel parent = new ParentJoinMockModel();
+            parent.intField = i;
+            parent.save();
+            parents.add(parent);
+        }
+        return parents;
+    }
+
+    /**
+     * Saves count children spread round-robin over the parents, with intField counting up from firstValue.
+     */
+    private static void createChildren(List<ParentJoinMockModel> parents, int count, int firstValue) {
+        for ( int i = 0; i < count; i++ ) {
+            ChildMockModel child = new ChildMockModel();
+            child.intField = firstValue + i;
+            child.parent = parents.get(i % parents.size());
+            child.save();
+        }
+    }
+
+    private static Field getField(Class<?> type, String name) {
+        try {
+            return type.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            throw new AssertionError(e);
+        }
+    }
+
 	/**
 	 * Mock model as we need 2 different model classes.
 	 */
 	@Table(name = "AnotherMockTable")
 	public static class AnotherMockModel extends Model {}
 
+    /**
+     * Mock model with change tracking enabled.
+     */
+    @Table(name = "TrackedMockModel", trackChanges = true)
+    public static class TrackedMockModel extends Model {
+        @Column
+        public int intField;
+
+        @Column
+        public String stringField;
+    }
+
+    /**
+     * Mock model with a unique natural key for upserts.
+     */
+    @Table(name = "UpsertMockModel")
+    public static class UpsertMockModel extends Model {
+        @Column(unique = true)
+        public String key;
+
+        @Column
+        public int value;
+    }
+
+    /**
+     * Mock model with primitive columns only.
+     */
+    @Table(name = "PrimitiveMockModel")
+    public static class PrimitiveMockModel extends Model {
+        @Column
+        public byte byteField;
+
+        @Column
+        public short shortField;
+
+        @Column
+        public int intField;
+
+        @Column
+        public long longField;
+
+        @Column
+        public float floatField;
+
+        @Column
+        public double doubleField;
+
+        @Column
+        public boolean booleanField;
+    }
+
+    /**
+     * Mock model with a lazily loaded reference.
+     */
+    @Table(name = "LazyChildMockModel")
+    public static class LazyChildMockModel extends Model {
+        @Column
+        public int intField;
+
+        @Column
+        public Lazy<ParentJoinMockModel> parent;
+    }
+
     /**
      * Mock model to test joins with same names.
      * It's a copy from MockModel.
@@ -252,6 +954,10 @@ public class ModelTest extends ActiveAndroidTestCase {
 
         @Column
         public boolean booleanField;
+
+        public List<ChildMockModel> children() {
+            return getMany(ChildMockModel.class, "parent");
+        }
     }
 
     /**
@@ -0,0 +1,72 @@
+package com.activeandroid.test;
+
+import android.database.ContentObserver;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.content.ContentProvider;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NotificationTest extends ActiveAndroidTestCase {
+
+    private static final long DELIVERY_WAIT_MILLIS = 500;
+
+    private final AtomicInteger mChanges = new AtomicInteger();
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mChanges.incrementAndGet();
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Cache.getContext().getContentResolver()
+                .registerContentObserver(ContentProvider.createUri(MockModel.class, null), true, mObserver);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Cache.getContext().getContentResolver().unregisterContentObserver(mObserver);
+        super.tearDown();
+    }
+
+    /**
+     * Saves inside a committed transaction should produce a single notification.
+     */
+    public void testTransactionCoalescesNotifications() throws InterruptedException {
+        ActiveAndroid.beginTransaction();
+        try {
+            for ( int i = 0; i < 10; i++ ) {
+                new MockModel().save();
+            }
+            Thread.sleep(DELIVERY_WAIT_MILLIS);
+            assertEquals(0, mChanges.get());
+
+            ActiveAndroid.setTransactionSuccessful();
+        } finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        Thread.sleep(DELIVERY_WAIT_MILLIS);
+        assertEquals(1, mChanges.get());
+    }
+
+    /**
+     * Notifications buffered in a rolled back transaction should be dropped.
+     */
+    public void testRollbackDropsNotifications() throws InterruptedException {
+        ActiveAndroid.beginTransaction();
+        try {
+            new MockModel().save();
+        } finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        Thread.sleep(DELIVERY_WAIT_MILLIS);
+        assertEquals(0, mChanges.get());
+    }
+}
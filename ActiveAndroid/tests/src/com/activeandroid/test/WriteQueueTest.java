@@ -0,0 +1,138 @@
+package com.activeandroid.test;
+
+import android.database.SQLException;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.WriteQueue;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public class WriteQueueTest extends ActiveAndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        new Delete().from(MockModel.class).execute();
+    }
+
+    /**
+     * flush() should make every previously queued write visible.
+     */
+    public void testSaveAsyncAndFlush() throws Exception {
+        List<MockModel> models = new ArrayList<MockModel>();
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for ( int i = 0; i < 20; i++ ) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            models.add(model);
+            futures.add(model.saveAsync());
+        }
+
+        Cache.getWriteQueue().flush();
+
+        for ( int i = 0; i < models.size(); i++ ) {
+            assertTrue(futures.get(i).isDone());
+            assertEquals(models.get(i).getId(), futures.get(i).get());
+        }
+        assertEquals(20, new Select().from(MockModel.class).count());
+    }
+
+    /**
+     * A failing operation should fail only its own future; the other writes of its batch still commit.
+     */
+    public void testFailedOperationOnlyFailsItself() throws Exception {
+        final WriteQueue queue = Cache.getWriteQueue();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // hold the writer thread so the next operations end up in one batch
+        queue.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                release.await();
+                return null;
+            }
+        });
+
+        MockModel before = new MockModel();
+        Future<Long> saveBefore = before.saveAsync();
+        Future<Void> failure = queue.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw new IllegalStateException("failure");
+            }
+        });
+        MockModel after = new MockModel();
+        Future<Long> saveAfter = after.saveAsync();
+        release.countDown();
+
+        try {
+            failure.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertNotNull(saveBefore.get());
+        assertEquals(before.getId(), saveBefore.get());
+        assertNotNull(saveAfter.get());
+        assertEquals(after.getId(), saveAfter.get());
+        assertEquals(2, new Select().from(MockModel.class).count());
+    }
+
+    /**
+     * An insert that fails inside saveAsync() should fail its future instead of completing with -1.
+     */
+    public void testFailedInsertFailsFuture() throws Exception {
+        new Delete().from(ModelTest.UpsertMockModel.class).execute();
+
+        ModelTest.UpsertMockModel first = new ModelTest.UpsertMockModel();
+        first.key = "duplicate";
+        first.save();
+
+        ModelTest.UpsertMockModel second = new ModelTest.UpsertMockModel();
+        second.key = "duplicate";
+        try {
+            second.saveAsync().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        assertNull(second.getId());
+    }
+
+    /**
+     * dispose() should let queued writes commit before it closes the database.
+     */
+    public void testDisposeDrainsQueue() throws Exception {
+        // keep the writer busy so the saves are still queued when dispose() runs
+        Cache.getWriteQueue().submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Thread.sleep(200);
+                return null;
+            }
+        });
+
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for ( int i = 0; i < 50; i++ ) {
+            futures.add(new MockModel().saveAsync());
+        }
+
+        ActiveAndroid.dispose();
+        for ( Future<Long> future : futures ) {
+            assertTrue(future.isDone());
+            assertNotNull(future.get());
+        }
+
+        ActiveAndroid.initialize(getApplication());
+        assertEquals(50, new Select().from(MockModel.class).count());
+    }
+}
@@ -0,0 +1,78 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.query.Aggregate;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.Map;
+
+
+public class AggregateTest extends SqlableTestCase {
+
+    private void populateTable() {
+        new Delete().from(MockModel.class).execute();
+
+        // intField: 0, 1, 2, 3, 4; booleanField groups the odd and even rows
+        for (int i = 0; i < 5; i++) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            model.doubleField = i * 0.5;
+            model.booleanField = i % 2 == 0;
+            model.save();
+        }
+    }
+
+    public void testScalarAggregates() {
+        populateTable();
+
+        assertEquals(10L, new Select().from(MockModel.class).sumLong("intField"));
+        assertEquals(5.0, new Select().from(MockModel.class).sum("doubleField"));
+        assertEquals(2.0, new Select().from(MockModel.class).avg("intField"));
+        assertEquals(0.0, new Select().from(MockModel.class).min("doubleField"));
+        assertEquals(4L, new Select().from(MockModel.class).maxLong("intField", -1));
+        assertEquals(2, new Select().from(MockModel.class).countDistinct("booleanField"));
+        assertEquals(3L, new Select().from(MockModel.class).where("intField > ?", 1).minLong("intField", -1));
+    }
+
+    /**
+     * Aggregates over no rows should fall back to 0, NaN or the given default.
+     */
+    public void testEmptyAggregates() {
+        populateTable();
+
+        assertEquals(0L, new Select().from(MockModel.class).where("intField > ?", 10).sumLong("intField"));
+        assertEquals(0.0, new Select().from(MockModel.class).where("intField > ?", 10).sum("doubleField"));
+        assertTrue(Double.isNaN(new Select().from(MockModel.class).where("intField > ?", 10).avg("intField")));
+        assertEquals(-1L, new Select().from(MockModel.class).where("intField > ?", 10).maxLong("intField", -1));
+    }
+
+    /**
+     * REAL aggregates should keep every bit of the double, not the 15 digits SQLite prints as text.
+     */
+    public void testAggregatePrecision() {
+        new Delete().from(MockModel.class).execute();
+
+        MockModel model = new MockModel();
+        model.doubleField = 1.0 / 3;
+        model.save();
+
+        assertEquals(1.0 / 3, new Select().from(MockModel.class).max("doubleField"));
+        assertEquals(1.0 / 3, new Select().from(MockModel.class).sum("doubleField"));
+    }
+
+    public void testAggregateByGroup() {
+        populateTable();
+
+        Map<String, Long> sums = new Select().from(MockModel.class).groupBy("booleanField")
+                .orderBy("booleanField").aggregateLongByGroup(Aggregate.SUM, "intField");
+        assertEquals(2, sums.size());
+        assertEquals(Long.valueOf(4), sums.get("0"));
+        assertEquals(Long.valueOf(6), sums.get("1"));
+
+        Map<String, Double> averages = new Select().from(MockModel.class).groupBy("booleanField")
+                .aggregateByGroup(Aggregate.AVG, "intField");
+        assertEquals(2.0, averages.get("0"));
+        assertEquals(2.0, averages.get("1"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.query.ColumnarResult;
+import com.activeandroid.query.ColumnarResult.ColumnType;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.Date;
+
+
+public class ColumnarTest extends SqlableTestCase {
+
+    public void testExecuteColumnar() {
+        new Delete().from(MockModel.class).execute();
+
+        for (int i = 0; i < 4; i++) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            model.doubleField = i * 1.5;
+            // every other row has a NULL date
+            model.dateField = i % 2 == 0 ? new Date(1000L * i) : null;
+            model.save();
+        }
+
+        ColumnarResult result = new Select("dateField", "doubleField", "intField").from(MockModel.class)
+                .orderBy("intField").executeColumnar(ColumnType.LONG, ColumnType.DOUBLE, ColumnType.INT);
+
+        assertEquals(4, result.getRowCount());
+        assertEquals(3, result.getColumnCount());
+        assertEquals(1, result.getColumnIndex("doubleField"));
+
+        long[] dates = result.getLongs(0);
+        double[] doubles = result.getDoubles(1);
+        int[] ints = result.getInts(2);
+        assertEquals(4, dates.length);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, ints[i]);
+            assertEquals(i * 1.5, doubles[i]);
+            assertEquals(i % 2 != 0, result.isNull(0, i));
+            if (i % 2 == 0) {
+                assertEquals(1000L * i, dates[i]);
+            }
+        }
+
+        assertTrue(result.getMemoryFootprint() >= 4 * (8 + 8 + 4));
+    }
+
+    public void testColumnTypeMismatch() {
+        ColumnarResult result = new Select("intField").from(MockModel.class).executeColumnar(ColumnType.INT);
+
+        try {
+            result.getLongs(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
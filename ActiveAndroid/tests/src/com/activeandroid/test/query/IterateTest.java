@@ -0,0 +1,96 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.Cache;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.ModelIterator;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+
+public class IterateTest extends SqlableTestCase {
+
+    private List<MockModel> populateTable() {
+        new Delete().from(MockModel.class).execute();
+
+        List<MockModel> models = new ArrayList<MockModel>();
+        for (int i = 0; i < 5; i++) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            // every other row has a NULL date
+            model.dateField = i % 2 == 0 ? new Date(1000L * i) : null;
+            model.save();
+            models.add(model);
+        }
+        return models;
+    }
+
+    /**
+     * Should return the same rows as execute(), one at a time.
+     */
+    public void testIterate() {
+        List<MockModel> models = populateTable();
+
+        ModelIterator<MockModel> iterator = new Select().from(MockModel.class).orderBy("intField").iterate();
+        int count = 0;
+        while (iterator.hasNext()) {
+            MockModel model = iterator.next();
+            assertEquals(models.get(count).getId(), model.getId());
+            assertEquals(count, model.intField);
+            count++;
+        }
+        iterator.close();
+
+        assertEquals(models.size(), count);
+        assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * A reused instance should not keep values of the previous row, and scans should bypass the cache.
+     */
+    public void testIterateReusingInstance() {
+        List<MockModel> models = populateTable();
+        Cache.clear();
+
+        ModelIterator<MockModel> iterator = new Select().from(MockModel.class).orderBy("intField")
+                .iterate(false, true);
+        MockModel previous = null;
+        int count = 0;
+        while (iterator.hasNext()) {
+            MockModel model = iterator.next();
+            if (previous != null) {
+                assertSame(previous, model);
+            }
+            previous = model;
+
+            assertEquals(count, model.intField);
+            assertEquals(count % 2 == 0, model.dateField != null);
+            count++;
+        }
+        iterator.close();
+
+        assertEquals(models.size(), count);
+        assertNull(Cache.getEntity(MockModel.class, models.get(0).getId()));
+    }
+
+    /**
+     * Returning false from the callback should stop the iteration.
+     */
+    public void testForEachStops() {
+        populateTable();
+
+        final List<Integer> seen = new ArrayList<Integer>();
+        new Select().from(MockModel.class).orderBy("intField").forEach(new ModelIterator.Callback<MockModel>() {
+            @Override
+            public boolean onNext(MockModel model) {
+                seen.add(model.intField);
+                return seen.size() < 2;
+            }
+        });
+
+        assertEquals(2, seen.size());
+    }
+}
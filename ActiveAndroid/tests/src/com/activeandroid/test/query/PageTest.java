@@ -0,0 +1,171 @@
+package com.activeandroid.test.query;
+
+import android.database.Cursor;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Page;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+import com.activeandroid.util.SQLiteUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class PageTest extends SqlableTestCase {
+
+    private void populateTable() {
+        new Delete().from(IndexedMockModel.class).execute();
+
+        // duplicate scores, so the id has to break ties between pages
+        for (int i = 0; i < 7; i++) {
+            IndexedMockModel model = new IndexedMockModel();
+            model.score = i / 2;
+            model.name = "name" + i;
+            model.save();
+        }
+    }
+
+    private List<IndexedMockModel> collectPages(boolean descending, int pageSize) {
+        List<IndexedMockModel> models = new ArrayList<IndexedMockModel>();
+        String token = null;
+        do {
+            Page<IndexedMockModel> page = new Select().from(IndexedMockModel.class)
+                    .page(token, pageSize, descending, "score");
+            assertTrue(page.getItems().size() <= pageSize);
+            models.addAll(page.getItems());
+            token = page.getContinuationToken();
+        } while (token != null);
+        return models;
+    }
+
+    /**
+     * Following the continuation tokens should return every row exactly once, in key order.
+     */
+    public void testPageAscending() {
+        populateTable();
+
+        List<IndexedMockModel> expected = new Select().from(IndexedMockModel.class)
+                .orderBy("score ASC, Id ASC").execute();
+        List<IndexedMockModel> paged = collectPages(false, 3);
+
+        assertEquals(expected.size(), paged.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), paged.get(i).getId());
+        }
+    }
+
+    public void testPageDescending() {
+        populateTable();
+
+        List<IndexedMockModel> expected = new Select().from(IndexedMockModel.class)
+                .orderBy("score DESC, Id DESC").execute();
+        List<IndexedMockModel> paged = collectPages(true, 2);
+
+        assertEquals(expected.size(), paged.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), paged.get(i).getId());
+        }
+    }
+
+    /**
+     * A follow-up page should seek into the index by its leading key instead of scanning from the start.
+     */
+    public void testSeekUsesIndexRange() {
+        populateTable();
+        String token = new Select().from(IndexedMockModel.class).page(null, 2, "score").getContinuationToken();
+
+        final String[] query = new String[1];
+        final List<String> arguments = new ArrayList<String>();
+        SQLiteUtils.setQueryListener(new SQLiteUtils.QueryListener() {
+            @Override
+            public void onQuery(String sql, String[] selectionArgs) {
+                query[0] = sql;
+                arguments.addAll(Arrays.asList(selectionArgs));
+            }
+        });
+        try {
+            new Select().from(IndexedMockModel.class).page(token, 2, "score");
+        } finally {
+            SQLiteUtils.setQueryListener(null);
+        }
+
+        assertTrue(query[0], query[0].contains("IndexedMockModel.score >= ? AND ("));
+
+        Cursor plan = Cache.openDatabase().rawQuery("EXPLAIN QUERY PLAN " + query[0],
+                arguments.toArray(new String[arguments.size()]));
+        try {
+            StringBuilder details = new StringBuilder();
+            int detail = plan.getColumnIndex("detail");
+            while (plan.moveToNext()) {
+                details.append(plan.getString(detail)).append('\n');
+            }
+            assertTrue(details.toString(), details.toString().contains("(score>?)"));
+        } finally {
+            plan.close();
+        }
+    }
+
+    /**
+     * The WHERE clause of the query should apply to every page.
+     */
+    public void testPageWithWhere() {
+        populateTable();
+
+        Page<IndexedMockModel> page = new Select().from(IndexedMockModel.class).where("score > ?", 1)
+                .page(null, 10, "score");
+
+        assertEquals(3, page.getItems().size());
+        assertFalse(page.hasMore());
+        assertNull(page.getContinuationToken());
+    }
+
+    /**
+     * Paging by a column without an index should be rejected.
+     */
+    public void testPageRequiresIndex() {
+        try {
+            new Select().from(MockModel.class).page(null, 10, "intField");
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testMalformedToken() {
+        try {
+            new Select().from(IndexedMockModel.class).page("5:abc", 10, "score");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A page size below 1 should be rejected before any query runs.
+     */
+    public void testInvalidPageSize() {
+        for ( int pageSize : new int[] { 0, -1 } ) {
+            try {
+                new Select().from(IndexedMockModel.class).page(null, pageSize, "score");
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Table(name = "IndexedMockModel")
+    public static class IndexedMockModel extends Model {
+        @Column(index = true)
+        public int score;
+
+        @Column
+        public String name;
+    }
+}
@@ -0,0 +1,112 @@
+package com.activeandroid.test.query;
+
+import android.database.Cursor;
+
+import com.activeandroid.Cache;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.RowMapper;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.Date;
+import java.util.List;
+
+
+public class ProjectionTest extends SqlableTestCase {
+
+    private void populateTable() {
+        new Delete().from(MockModel.class).execute();
+
+        for (int i = 0; i < 3; i++) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            model.doubleField = i / 2.0;
+            model.dateField = new Date(1000L * i);
+            model.save();
+        }
+        Cache.clear();
+    }
+
+    /**
+     * Only the fields of the result type should be selected and filled, without touching the cache.
+     */
+    public void testExecuteAs() {
+        populateTable();
+
+        List<Summary> summaries = new Select().from(MockModel.class).orderBy("intField").executeAs(Summary.class);
+
+        assertEquals(3, summaries.size());
+        for (int i = 0; i < summaries.size(); i++) {
+            assertEquals(i, summaries.get(i).intField);
+            assertEquals(i / 2.0, summaries.get(i).doubleField.doubleValue());
+            assertNull(summaries.get(i).unmapped);
+            assertNull(summaries.get(i).unsupported);
+            assertNull(Cache.getEntity(MockModel.class, summaries.get(i).id));
+        }
+    }
+
+    /**
+     * Fields with a type serializer, such as Date, should be deserialized like model columns.
+     */
+    public void testExecuteAsWithSerializedField() {
+        populateTable();
+
+        List<Dated> rows = new Select().from(MockModel.class).orderBy("intField").executeAs(Dated.class);
+
+        assertEquals(3, rows.size());
+        assertEquals(new Date(2000L), rows.get(2).dateField);
+    }
+
+    /**
+     * Explicitly selected columns should be mapped by their alias.
+     */
+    public void testExecuteAsWithAliases() {
+        populateTable();
+
+        List<Summary> summaries = new Select(new Select.Column("intField * 10", "intField"))
+                .from(MockModel.class).orderBy("intField").executeAs(Summary.class);
+
+        assertEquals(3, summaries.size());
+        assertEquals(20, summaries.get(2).intField);
+        assertNull(summaries.get(2).doubleField);
+    }
+
+    public void testExecuteRowMapper() {
+        populateTable();
+
+        List<Integer> values = new Select("intField").from(MockModel.class).orderBy("intField DESC")
+                .execute(new RowMapper<Integer>() {
+                    @Override
+                    public Integer mapRow(Cursor cursor) {
+                        return cursor.getInt(0);
+                    }
+                });
+
+        assertEquals(3, values.size());
+        assertEquals(2, values.get(0).intValue());
+    }
+
+    public void testExecuteTuples() {
+        populateTable();
+
+        List<Object[]> rows = new Select("intField", "doubleField").from(MockModel.class).orderBy("intField")
+                .executeTuples(int.class, double.class);
+
+        assertEquals(3, rows.size());
+        assertEquals(1, rows.get(1)[0]);
+        assertEquals(0.5, rows.get(1)[1]);
+    }
+
+    public static class Summary {
+        long id;
+        int intField;
+        Double doubleField;
+        String unmapped;
+        List<String> unsupported;
+    }
+
+    public static class Dated {
+        int intField;
+        Date dateField;
+    }
+}